@@ -0,0 +1,767 @@
+package calculator;
+
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Simple micro-benchmark harness for the engine hot paths.
+ * Usage: {@code java calculator.Benchmark [section...]}; with no arguments every section runs.
+ */
+public class Benchmark {
+    private static final String[] FORMULAS = {
+            "2+3*4", "a*sin(x)+b", "sqrt(x*x+y*y)/2", "((x+1)*(x-1))^2/(1+abs(y))", "ln(x)+log(y)-atan(x/y)"
+    };
+    static volatile double sink;
+
+    public static void main(String[] args) {
+        Set<String> sections = new HashSet<>(Arrays.asList(args));
+        if (sections.isEmpty() || sections.contains("compile")) compiledVsInterpreted();
+        if (sections.isEmpty() || sections.contains("alloc")) allocationPerEvaluation();
+        if (sections.isEmpty() || sections.contains("lexer")) tokenization();
+        if (sections.isEmpty() || sections.contains("jit")) interpreterVsJit();
+        if (sections.isEmpty() || sections.contains("batch")) batchEvaluation();
+        if (sections.isEmpty() || sections.contains("concurrency")) concurrentScaling();
+        if (sections.isEmpty() || sections.contains("cache")) parseCache();
+        if (sections.isEmpty() || sections.contains("matrix")) matrixMultiply(1024);
+        if (sections.contains("matrix-large")) matrixMultiply(4096);
+        if (sections.isEmpty() || sections.contains("lu")) luDecomposition();
+        if (sections.isEmpty() || sections.contains("history")) historyAppend();
+        if (sections.isEmpty() || sections.contains("history-store")) historyStoreQueries();
+        if (sections.isEmpty() || sections.contains("history-ui")) historyPanelEdtTime();
+        if (sections.isEmpty() || sections.contains("server")) serverLoad();
+        if (sections.isEmpty() || sections.contains("metrics")) metricsOverhead();
+        if (sections.isEmpty() || sections.contains("complex")) complexArithmetic();
+        if (sections.isEmpty() || sections.contains("combinatorics")) combinatorics();
+        if (sections.isEmpty() || sections.contains("optimizer")) optimizer();
+        if (sections.isEmpty() || sections.contains("sparse")) sparseMatrix();
+    }
+
+    /** Runs {@code body} (which performs {@code opsPerCall} operations) until warm, then reports ns/op. */
+    static double measure(String label, long opsPerCall, Runnable body) {
+        return measure(label, opsPerCall, 5, body);
+    }
+
+    static double measure(String label, long opsPerCall, int warmups, Runnable body) {
+        for (int i = 0; i < warmups; i++) body.run();
+        int calls = 0;
+        long start = System.nanoTime(), elapsed;
+        do { body.run(); calls++; elapsed = System.nanoTime() - start; } while (elapsed < 500_000_000L);
+        double nsPerOp = (double) elapsed / (calls * opsPerCall);
+        System.out.printf("%-48s %12.1f ns/op%n", label, nsPerOp);
+        return nsPerOp;
+    }
+
+    static void compiledVsInterpreted() {
+        CalculatorEngine engine = new CalculatorEngine();
+        engine.setVariable("a", 2); engine.setVariable("b", 1);
+        engine.setVariable("x", 0.5); engine.setVariable("y", 3);
+        int n = 10_000;
+        for (String f: FORMULAS) {
+            double interp = measure("evaluate(String)   " + f, n, () -> {
+                double s = 0; for (int i = 0; i < n; i++) s += engine.evaluate(f); sink = s;
+            });
+            CompiledExpression ce = engine.compile(f);
+            double[] values = new double[ce.variables().size()];
+            for (int i = 0; i < values.length; i++) values[i] = engine.getVariable(ce.variables().get(i));
+            double compiled = measure("compiled.evaluate  " + f, n, () -> {
+                double s = 0; for (int i = 0; i < n; i++) s += ce.evaluate(values); sink = s;
+            });
+            System.out.printf("%-48s %12.1fx%n", "  speedup", interp / compiled);
+        }
+    }
+
+    /** Bytes allocated by the current thread, via the HotSpot extension of ThreadMXBean. */
+    static long allocatedBytes() {
+        com.sun.management.ThreadMXBean mx = (com.sun.management.ThreadMXBean) java.lang.management.ManagementFactory.getThreadMXBean();
+        return mx.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /** Bytes per steady-state evaluation; {@code CompiledExpressionTest} holds these to zero. */
+    static void allocationPerEvaluation() {
+        CalculatorEngine engine = new CalculatorEngine();
+        engine.setVariable("a", 2); engine.setVariable("b", 1);
+        engine.setVariable("x", 0.5); engine.setVariable("y", 3);
+        int n = 1_000_000;
+        for (String f: FORMULAS) {
+            CompiledExpression ce = engine.compile(f);
+            double[] values = new double[ce.variables().size()];
+            Arrays.fill(values, 1.0);
+            for (int i = 0; i < 200_000; i++) sink = ce.evaluate(values);
+            long before = allocatedBytes();
+            double s = 0;
+            for (int i = 0; i < n; i++) { if (values.length > 0) values[0] = i; s += ce.evaluate(values); }
+            long bytes = allocatedBytes() - before;
+            sink = s;
+            System.out.printf("%-48s %12.3f bytes/eval%n", "compiled.evaluate  " + f, (double) bytes / n);
+        }
+    }
+
+    /** The regex tokenizer and String.matches classification the engine used before {@link Lexer}, kept as the baseline. */
+    static int legacyTokenize(String expr) {
+        expr = expr.replaceAll("\\s+","").replaceAll("\u00d7", "*").replaceAll("\u00f7", "/");
+        Matcher m = Pattern.compile("\\d*\\.\\d+|\\d+|[a-zA-Z_][a-zA-Z0-9_]*|[()+\\-*/^%,]").matcher(expr);
+        int classified = 0;
+        while (m.find()) {
+            String t = m.group();
+            if (t.matches("\\d*\\.\\d+|\\d+") || t.matches("[a-zA-Z_][a-zA-Z0-9_]*")) classified++;
+        }
+        return classified;
+    }
+
+    static void tokenization() {
+        Set<String> functions = new HashSet<>(Arrays.asList("sin","cos","tan","asin","acos","atan","ln","log","sqrt","abs","fact","nCr","nPr"));
+        int n = 10_000;
+        for (String f: FORMULAS) {
+            double legacy = measure("regex tokenize     " + f, n, () -> {
+                int s = 0; for (int i = 0; i < n; i++) s += legacyTokenize(f); sink = s;
+            });
+            double lexer = measure("Lexer.tokenize     " + f, n, () -> {
+                int s = 0; for (int i = 0; i < n; i++) s += new Lexer(f, functions).tokenize().size(); sink = s;
+            });
+            System.out.printf("%-48s %12.1fx%n", "  speedup", legacy / lexer);
+        }
+    }
+
+    static void interpreterVsJit() {
+        CalculatorEngine engine = new CalculatorEngine();
+        int n = 100_000;
+        for (String f: FORMULAS) {
+            CompiledExpression interp = engine.compile(f);
+            CompiledExpression jit = engine.compile(f);
+            jit.jit(engine.isDegrees(), engine.isExactCombinatorics());
+            double[] values = new double[interp.variables().size()];
+            Arrays.fill(values, 1.5);
+            double ti = measure("interpreter        " + f, n, () -> {
+                double s = 0; for (int i = 0; i < n; i++) s += interp.evaluate(values); sink = s;
+            });
+            double tj = measure("method-handle tier " + f, n, () -> {
+                double s = 0; for (int i = 0; i < n; i++) s += jit.evaluate(values); sink = s;
+            });
+            System.out.printf("%-48s %12.1fx%n", "  speedup", ti / tj);
+        }
+    }
+
+    static void batchEvaluation() {
+        CalculatorEngine engine = new CalculatorEngine();
+        engine.setVariable("a", 2); engine.setVariable("b", 1);
+        String f = "a*sin(x)+b";
+        CompiledExpression ce = engine.compile(f);
+        int xs = ce.slot("x");
+        for (int rows: new int[]{1_000, 1_000_000, 100_000_000}) {
+            // x and out columns plus headroom
+            if ((long) rows * 8 * 3 > Runtime.getRuntime().maxMemory()) {
+                System.out.printf("%-48s skipped, needs a larger heap (-Xmx)%n", f + " @" + rows);
+                continue;
+            }
+            double[] x = new double[rows];
+            for (int i = 0; i < rows; i++) x[i] = i * 1e-3;
+            double[] out = new double[rows];
+            Map<String, double[]> columns = Collections.singletonMap("x", x);
+            double batch = measure("evaluateBatch      " + f + " @" + rows, rows, () -> {
+                engine.evaluateBatch(f, columns, out); sink = out[rows - 1];
+            });
+            double[] values = new double[ce.variables().size()];
+            for (int i = 0; i < values.length; i++) values[i] = engine.getVariable(ce.variables().get(i));
+            double row = measure("per-row compiled   " + f + " @" + rows, rows, () -> {
+                for (int i = 0; i < rows; i++) { values[xs] = x[i]; out[i] = ce.evaluate(values); } sink = out[rows - 1];
+            });
+            System.out.printf("%-48s %12.3e rows/s (per-row %.3e rows/s)%n", "  throughput", 1e9 / batch, 1e9 / row);
+        }
+    }
+
+    /**
+     * Shares one engine and one compiled expression across 1..N threads, each with its own
+     * {@link EvaluationContext}. Every result is checked against the single-threaded value
+     * and memory is hammered with {@code addToMemory}, so lost updates or crossed bindings show up.
+     */
+    static void concurrentScaling() {
+        CalculatorEngine engine = new CalculatorEngine();
+        engine.setVariable("a", 2); engine.setVariable("b", 1);
+        String f = "a*sin(x)+b*M";
+        CompiledExpression ce = engine.compile(f);
+        int cores = Runtime.getRuntime().availableProcessors();
+        int perThread = 2_000_000;
+        for (int threads = 1; threads <= cores; threads *= 2) {
+            engine.storeMemory(0);
+            int nThreads = threads;
+            java.util.concurrent.atomic.AtomicLong errors = new java.util.concurrent.atomic.AtomicLong();
+            Thread[] workers = new Thread[threads];
+            long start = System.nanoTime();
+            for (int t = 0; t < threads; t++) {
+                int id = t;
+                workers[t] = new Thread(() -> {
+                    EvaluationContext ctx = engine.newContext();
+                    ctx.setVariable("M", 0);
+                    ctx.setDegrees(id % 2 == 1);
+                    double x = id + 0.25;
+                    ctx.setVariable("x", x);
+                    double expected = 2 * Math.sin(id % 2 == 1 ? Math.toRadians(x) : x);
+                    double s = 0;
+                    for (int i = 0; i < perThread; i++) {
+                        double r = ce.evaluate(ctx);
+                        if (r != expected) errors.incrementAndGet();
+                        s += r;
+                        if ((i & 1023) == 0) engine.addToMemory(1);
+                    }
+                    sink = s;
+                });
+                workers[t].start();
+            }
+            for (Thread w: workers) {
+                try { w.join(); } catch (InterruptedException e) { Thread.currentThread().interrupt(); return; }
+            }
+            double secs = (System.nanoTime() - start) / 1e9;
+            long expectedMemory = (long) nThreads * ((perThread + 1023) / 1024);
+            boolean memoryOk = engine.recallMemory() == expectedMemory;
+            System.out.printf("%-48s %12.3e evals/s  errors=%d memory=%s%n", "shared engine, " + threads + " thread(s)",
+                    (double) nThreads * perThread / secs, errors.get(), memoryOk ? "ok" : "LOST UPDATES");
+        }
+    }
+
+    /** Heavy-tailed traffic: 80% of requests hit 500 hot formulas, the rest are one-offs. */
+    static void parseCache() {
+        int n = 100_000;
+        String[] traffic = new String[n];
+        Random r = new Random(42);
+        for (int i = 0; i < n; i++) {
+            int k = r.nextDouble() < 0.8 ? r.nextInt(500) : 1000 + r.nextInt(10_000_000);
+            traffic[i] = "a*sin(x)+" + k + "*y^2";
+        }
+        List<ParseCache.Policy> policies = new ArrayList<>(Arrays.asList(ParseCache.Policy.values()));
+        policies.add(0, null);
+        for (ParseCache.Policy policy: policies) {
+            CalculatorEngine engine = new CalculatorEngine();
+            if (policy != null) engine.enableParseCache(1_000, policy);
+            measure("evaluate(String) cache=" + (policy == null ? "off" : policy), n, () -> {
+                double s = 0; for (String t: traffic) s += engine.evaluate(t); sink = s;
+            });
+            ParseCache c = engine.getParseCache();
+            if (c != null) System.out.printf("%-48s %12.1f%% hit rate, %d evictions%n", "  " + c.policy(),
+                    100.0 * c.hits() / (c.hits() + c.misses()), c.evictions());
+        }
+    }
+
+    static Matrix randomMatrix(int n, long seed) {
+        Random r = new Random(seed);
+        double[] d = new double[n * n];
+        for (int i = 0; i < d.length; i++) d[i] = r.nextDouble() - 0.5;
+        return Matrix.fromRowMajor(n, n, d);
+    }
+
+    /** Naive vs blocked vs parallel kernels for n = 64 .. maxN; naive is skipped above 1024. */
+    static void matrixMultiply(int maxN) {
+        for (int n = 64; n <= maxN; n *= 2) {
+            Matrix a = randomMatrix(n, 1), b = randomMatrix(n, 2);
+            long flops = 2L * n * n * n;
+            int warmups = n >= 512 ? 1 : 5;
+            if (n <= 1024) measure("multiplyNaive    n=" + n, flops, warmups, () -> sink = a.multiplyNaive(b).get(0, 0));
+            measure("multiplyBlocked  n=" + n, flops, warmups, () -> sink = a.multiplyBlocked(b).get(0, 0));
+            measure("multiplyParallel n=" + n, flops, warmups, () -> sink = a.multiplyParallel(b).get(0, 0));
+        }
+    }
+
+    /** The Laplace-expansion determinant Matrix used before LU, kept as the accuracy reference. */
+    static double cofactorDet(double[][] m) {
+        int n = m.length;
+        if (n==1) return m[0][0];
+        if (n==2) return m[0][0]*m[1][1] - m[0][1]*m[1][0];
+        double sum = 0;
+        for (int j = 0; j < n; j++) sum += Math.pow(-1, j) * m[0][j] * cofactorDet(minor(m, 0, j));
+        return sum;
+    }
+    static double[][] minor(double[][] m, int row, int col) {
+        int n = m.length; double[][] mm = new double[n-1][n-1];
+        for (int i = 0, r = 0; i < n; i++) {
+            if (i == row) continue;
+            for (int j = 0, c = 0; j < n; j++) if (j != col) mm[r][c++] = m[i][j];
+            r++;
+        }
+        return mm;
+    }
+    static double[][] cofactorInverse(double[][] m) {
+        int n = m.length; double det = cofactorDet(m); double[][] inv = new double[n][n];
+        for (int i = 0; i < n; i++) for (int j = 0; j < n; j++) inv[j][i] = Math.pow(-1, i+j) * cofactorDet(minor(m, i, j)) / det;
+        return inv;
+    }
+
+    /** Reports LU error against the cofactor results for n = 1..8 ({@code LUDecompositionTest} enforces limits), then shows how both scale. */
+    static void luDecomposition() {
+        double worstDet = 0, worstInv = 0, worstSolve = 0;
+        for (int n = 1; n <= 8; n++) {
+            for (long seed = 0; seed < 20; seed++) {
+                Matrix m = randomMatrix(n, seed);
+                double[][] d = m.toArray();
+                double ref = cofactorDet(d);
+                worstDet = Math.max(worstDet, Math.abs(m.determinant() - ref) / Math.max(1e-300, Math.abs(ref)));
+                // the cofactor inverse of a 1x1 matrix was always [[0]] (empty minor), so compare from n=2
+                double[][] refInv = n > 1 ? cofactorInverse(d) : new double[][]{{1 / d[0][0]}};
+                double[][] inv = m.inverse().toArray();
+                for (int i = 0; i < n; i++) for (int j = 0; j < n; j++)
+                    worstInv = Math.max(worstInv, Math.abs(inv[i][j] - refInv[i][j]) / Math.max(1.0, Math.abs(refInv[i][j])));
+                Matrix b = randomMatrix(n, seed + 100);
+                double[] residual = m.multiply(m.solve(b)).toRowMajor(), expect = b.toRowMajor();
+                for (int i = 0; i < residual.length; i++) worstSolve = Math.max(worstSolve, Math.abs(residual[i] - expect[i]));
+            }
+        }
+        System.out.printf("LU vs cofactor, n=1..8: max rel det err %.2e, max inverse err %.2e, max |A*solve(B)-B| %.2e%n", worstDet, worstInv, worstSolve);
+        for (int n = 4; n <= 9; n++) {
+            Matrix m = randomMatrix(n, 7);
+            double[][] d = m.toArray();
+            measure("cofactor determinant n=" + n, 1, n >= 8 ? 1 : 5, () -> sink = cofactorDet(d));
+            measure("LU determinant       n=" + n, 1, () -> sink = m.determinant());
+        }
+        for (int n = 16; n <= 1024; n *= 4) {
+            Matrix m = randomMatrix(n, 7);
+            measure("LU determinant       n=" + n, 1, n >= 256 ? 1 : 5, () -> sink = m.determinant());
+            measure("LU inverse           n=" + n, 1, n >= 256 ? 1 : 5, () -> sink = m.inverse().get(0, 0));
+        }
+    }
+
+    static void historyAppend() {
+        try {
+            java.nio.file.Path dir = java.nio.file.Files.createTempDirectory("history-bench");
+            int n = 20_000;
+            for (String mode: new String[]{"sync", "async", "async+fsync"}) {
+                java.nio.file.Path file = dir.resolve(mode + ".txt");  // stored in <mode>.d/
+                HistoryManager hm = new HistoryManager(file.toString());
+                if (mode.startsWith("async")) hm.enableAsync(new AsyncHistoryWriter.Options()
+                        .fsync(mode.endsWith("fsync") ? AsyncHistoryWriter.FsyncPolicy.PER_BATCH : AsyncHistoryWriter.FsyncPolicy.NEVER));
+                double callerNs = measure("HistoryManager.append " + mode, n, 1, () -> {
+                    for (int i = 0; i < n; i++) hm.append("a*sin(x)+b", "3.14159");
+                });
+                long start = System.nanoTime();
+                hm.flush();
+                hm.close();
+                System.out.printf("%-48s %12.3e appends/s (caller), drain %.1f ms%n", "  " + mode, 1e9 / callerNs, (System.nanoTime() - start) / 1e6);
+            }
+            deleteTree(dir);
+        } catch (java.io.IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /** Text readAll vs. indexed, memory-mapped store queries over the same 200K-entry history. */
+    static void historyStoreQueries() {
+        try {
+            java.nio.file.Path dir = java.nio.file.Files.createTempDirectory("history-store-bench");
+            java.nio.file.Path txt = dir.resolve("history.txt");
+            int n = 200_000;
+            try (java.io.BufferedWriter w = java.nio.file.Files.newBufferedWriter(txt)) {
+                java.time.LocalDateTime t = java.time.LocalDateTime.of(2026, 1, 1, 0, 0);
+                for (int i = 0; i < n; i++) w.write(t.plusSeconds(i) + " | a*sin(x)+" + i + " = " + (i * 0.5) + System.lineSeparator());
+            }
+            HistoryStore store = new HistoryStore(dir.resolve("store"));
+            long start = System.nanoTime();
+            long imported = store.importText(txt);
+            System.out.printf("%-48s %12.1f ms for %d entries%n", "HistoryStore.importText", (System.nanoTime() - start) / 1e6, imported);
+            measure("history.txt readAllLines (then last 50)", 1, 1, () -> {
+                try {
+                    List<String> l = java.nio.file.Files.readAllLines(txt);
+                    sink = l.get(l.size() - 50).length();
+                } catch (java.io.IOException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            measure("HistoryStore.tail(50)", 1, () -> sink = store.tail(50).size());
+            measure("HistoryStore.page(mid, 50)", 1, () -> sink = store.page(n / 2, 50).size());
+            long from = store.get(n / 3).timestamp;
+            measure("HistoryStore.range(1 hour)", 1, () -> sink = store.range(from, from + 3_600_000).size());
+            measure("HistoryStore.search(\"+199990\", 5)", 1, () -> sink = store.search("+199990", 5).size());
+            store.close();
+            deleteTree(dir);
+        } catch (java.io.IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    static void deleteTree(java.nio.file.Path dir) throws java.io.IOException {
+        try (java.util.stream.Stream<java.nio.file.Path> files = java.nio.file.Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    /** Mean time the EDT is busy per '=' press, measured by running the work through invokeAndWait. */
+    static double edtMillis(int repeats, Runnable onEdt) {
+        long total = 0;
+        for (int i = 0; i < repeats; i++) {
+            long[] t = new long[1];
+            try {
+                javax.swing.SwingUtilities.invokeAndWait(() -> { long s0 = System.nanoTime(); onEdt.run(); t[0] = System.nanoTime() - s0; });
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+            total += t[0];
+        }
+        return total / 1e6 / repeats;
+    }
+
+    /**
+     * EDT blocking per evaluation with 10K/100K/1M history entries: the old full re-render
+     * (readAll + reversed text into a JTextArea) against the incremental list model.
+     * Runs headless; the components are laid out but never shown.
+     */
+    static void historyPanelEdtTime() {
+        System.setProperty("java.awt.headless", "true");
+        try {
+            java.nio.file.Path dir = java.nio.file.Files.createTempDirectory("history-ui-bench");
+            for (int n: new int[]{10_000, 100_000, 1_000_000}) {
+                java.nio.file.Path file = dir.resolve("history-" + n + ".txt");
+                try (java.io.BufferedWriter w = java.nio.file.Files.newBufferedWriter(file)) {
+                    for (int i = 0; i < n; i++) w.write("2026-01-01T00:00:00.000 | a*sin(x)+" + i + " = " + i + System.lineSeparator());
+                }
+                HistoryManager hm = new HistoryManager(file.toString());
+                hm.enableAsync(new AsyncHistoryWriter.Options());
+                javax.swing.JTextArea area = new javax.swing.JTextArea();
+                area.setSize(300, 400);
+                double full = edtMillis(n >= 1_000_000 ? 2 : 5, () -> {
+                    hm.append("1+1", "2");
+                    List<String> lines = hm.readAll();
+                    StringBuilder sb = new StringBuilder();
+                    for (int i = lines.size() - 1; i >= 0; i--) sb.append(lines.get(i)).append("\n");
+                    area.setText(sb.toString());
+                });
+                HistoryListModel model = new HistoryListModel();
+                javax.swing.JList<String> list = new javax.swing.JList<>(model);
+                list.setPrototypeCellValue("2026-01-01T00:00:00.000 | 000000000000 = 00000000");
+                javax.swing.JScrollPane scroll = new javax.swing.JScrollPane(list);
+                scroll.setSize(300, 400);
+                List<String> loaded = hm.readAll();
+                edtMillis(1, () -> { model.setAll(loaded); scroll.doLayout(); });
+                double incremental = edtMillis(200, () -> { model.add(hm.append("1+1", "2")); scroll.doLayout(); list.getPreferredSize(); });
+                System.out.printf("%-48s full re-render %10.3f ms, incremental %8.4f ms%n", "EDT per evaluation, " + n + " entries", full, incremental);
+                hm.close();
+            }
+            deleteTree(dir);
+        } catch (java.io.IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Closed-loop load generator against a local {@link EvaluationServer}: each client thread
+     * keeps one request in flight over a keep-alive connection for a fixed duration.
+     */
+    static void serverLoad() {
+        CalculatorEngine engine = new CalculatorEngine();
+        engine.enableParseCache(1_000, ParseCache.Policy.TINY_LFU);
+        try (EvaluationServer server = new EvaluationServer(engine, 0)) {
+            server.start();
+            String base = "http://127.0.0.1:" + server.port() + "/eval";
+            StringBuilder lines = new StringBuilder();
+            for (int i = 0; i < 64; i++) lines.append(FORMULAS[i % FORMULAS.length].replaceAll("[a-z]+(?![a-z(])", "2")).append('\n');
+            String batch = lines.toString();
+            String single = base + "?expr=" + java.net.URLEncoder.encode("a*sin(x)+b", java.nio.charset.StandardCharsets.UTF_8) + "&a=2&b=1&x=0.5";
+            int cores = Runtime.getRuntime().availableProcessors();
+            for (int clients: new int[]{1, cores, cores * 4}) {
+                loadRun("GET single, " + clients + " client(s)", clients, 1, () -> httpGet(single));
+                loadRun("POST 64-line batch, " + clients + " client(s)", clients, 64, () -> httpPost(base, batch));
+            }
+        } catch (java.io.IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static void loadRun(String label, int clients, int evalsPerRequest, java.util.concurrent.Callable<String> request) {
+        LatencyHistogram latency = new LatencyHistogram();
+        java.util.concurrent.atomic.AtomicLong failures = new java.util.concurrent.atomic.AtomicLong();
+        long warmupEnd = System.nanoTime() + 500_000_000L, end = warmupEnd + 2_000_000_000L;
+        Thread[] threads = new Thread[clients];
+        for (int t = 0; t < clients; t++) {
+            threads[t] = new Thread(() -> {
+                long now;
+                while ((now = System.nanoTime()) < end) {
+                    try {
+                        request.call();
+                        if (now >= warmupEnd) latency.record(System.nanoTime() - now);
+                    } catch (Exception e) {
+                        failures.incrementAndGet();
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread t: threads) {
+            try { t.join(); } catch (InterruptedException e) { Thread.currentThread().interrupt(); return; }
+        }
+        double rps = latency.count() / 2.0;
+        System.out.printf("%-48s %10.0f req/s %12.0f evals/s  p50=%.1fus p99=%.1fus failures=%d%n", label, rps, rps * evalsPerRequest,
+                latency.percentile(50) / 1e3, latency.percentile(99) / 1e3, failures.get());
+    }
+
+    private static String httpGet(String url) throws java.io.IOException {
+        java.net.HttpURLConnection c = (java.net.HttpURLConnection) new java.net.URL(url).openConnection();
+        return readResponse(c);
+    }
+
+    private static String httpPost(String url, String body) throws java.io.IOException {
+        java.net.HttpURLConnection c = (java.net.HttpURLConnection) new java.net.URL(url).openConnection();
+        c.setRequestMethod("POST");
+        c.setDoOutput(true);
+        c.setRequestProperty("Content-Type", "text/plain");
+        try (java.io.OutputStream os = c.getOutputStream()) { os.write(body.getBytes(java.nio.charset.StandardCharsets.UTF_8)); }
+        return readResponse(c);
+    }
+
+    // reading the body to the end returns the connection to the keep-alive pool
+    private static String readResponse(java.net.HttpURLConnection c) throws java.io.IOException {
+        if (c.getResponseCode() != 200) throw new java.io.IOException("HTTP " + c.getResponseCode());
+        try (java.io.InputStream in = c.getInputStream()) {
+            return new String(in.readAllBytes(), java.nio.charset.StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Cost of instrumentation on the cheapest instrumented calls: off, on, and on with a JFR
+     * recording capturing every event. "guard only" is what an instrumented call pays when off.
+     */
+    static void metricsOverhead() {
+        boolean was = EngineMetrics.isEnabled();
+        CalculatorEngine engine = new CalculatorEngine();
+        CompiledExpression ce = engine.compile("a*sin(x)+b");
+        EvaluationContext ctx = engine.newContext();
+        ctx.setVariable("a", 2); ctx.setVariable("b", 1); ctx.setVariable("x", 0.5);
+        Matrix m = randomMatrix(8, 1);
+        int n = 1_000_000;
+        long[] guard = new long[1];
+        measure("guard only (isEnabled + branch)", n, () -> {
+            long c = 0;
+            for (int i = 0; i < n; i++) if (EngineMetrics.isEnabled()) c++;
+            guard[0] += c;
+        });
+        double[] off = new double[3], on = new double[3], jfr = new double[3];
+        for (int mode = 0; mode < 3; mode++) {
+            EngineMetrics.setEnabled(mode > 0);
+            jdk.jfr.Recording rec = null;
+            if (mode == 2) {
+                rec = new jdk.jfr.Recording();
+                rec.enable("calculator.Operation").withoutThreshold();
+                rec.start();
+            }
+            String tag = mode == 0 ? "off" : mode == 1 ? "on" : "on + JFR";
+            double[] r = mode == 0 ? off : mode == 1 ? on : jfr;
+            r[0] = measure("compiled evaluate, metrics " + tag, n, () -> {
+                double s = 0;
+                for (int i = 0; i < n; i++) s += ce.evaluate(ctx);
+                sink = s;
+            });
+            r[1] = measure("parse + evaluate (no cache), metrics " + tag, 10_000, () -> {
+                double s = 0;
+                for (int i = 0; i < 10_000; i++) s += engine.evaluate("2*sin(0.5)+1");
+                sink = s;
+            });
+            r[2] = measure("8x8 multiply, metrics " + tag, 10_000, () -> {
+                double s = 0;
+                for (int i = 0; i < 10_000; i++) s += m.multiply(m).get(0, 0);
+                sink = s;
+            });
+            if (rec != null) rec.close();
+        }
+        String[] names = {"compiled evaluate", "parse + evaluate", "8x8 multiply"};
+        for (int i = 0; i < 3; i++) {
+            System.out.printf("%-48s on %+6.1f%%  on+JFR %+6.1f%%%n", names[i] + " overhead vs off",
+                    100 * (on[i] / off[i] - 1), 100 * (jfr[i] / off[i] - 1));
+        }
+        System.out.print(EngineMetrics.summary());
+        EngineMetrics.setEnabled(was);
+        EngineMetrics.reset();
+        sink += guard[0];
+    }
+
+    /**
+     * Immutable {@link ComplexNumber} against the {@link MutableComplex} accumulator on the
+     * same update (z = z*z/(1+|z|) + c, kept bounded), then the complex evaluator scalar vs batch.
+     */
+    static void complexArithmetic() {
+        int n = 1_000_000;
+        ComplexNumber c0 = new ComplexNumber(0.25, -0.5);
+        double[] immutable = new double[2], mutable = new double[2];
+        measure("ComplexNumber z*z/(1+|z|)+c", n, () -> {
+            ComplexNumber z = new ComplexNumber(0, 0), one = new ComplexNumber(1, 0);
+            for (int i = 0; i < n; i++) z = z.mul(z).div(one.add(new ComplexNumber(z.mag(), 0))).add(c0);
+            immutable[0] = z.re; immutable[1] = z.im;
+        });
+        measure("MutableComplex z*z/(1+|z|)+c", n, () -> {
+            MutableComplex z = new MutableComplex();
+            for (int i = 0; i < n; i++) { double m = z.mag(); z.mul(z).div(1 + m, 0).add(c0.re, c0.im); }
+            mutable[0] = z.re; mutable[1] = z.im;
+        });
+        System.out.printf("%-48s %s%n", "results agree", Math.abs(immutable[0] - mutable[0]) + Math.abs(immutable[1] - mutable[1]) < 1e-9 ? "yes" : "NO");
+        long before = allocatedBytes();
+        ComplexNumber z = new ComplexNumber(0, 0);
+        ComplexNumber one = new ComplexNumber(1, 0);
+        for (int i = 0; i < n; i++) z = z.mul(z).div(one.add(new ComplexNumber(z.mag(), 0))).add(c0);
+        long immutableBytes = allocatedBytes() - before;
+        MutableComplex mz = new MutableComplex();
+        before = allocatedBytes();
+        for (int i = 0; i < n; i++) { double m = mz.mag(); mz.mul(mz).div(1 + m, 0).add(c0.re, c0.im); }
+        long mutableBytes = allocatedBytes() - before;
+        sink = z.re + mz.re;
+        System.out.printf("%-48s immutable %6.1f, mutable %6.3f bytes/iteration%n", "allocation", (double) immutableBytes / n, (double) mutableBytes / n);
+
+        CalculatorEngine engine = new CalculatorEngine();
+        ComplexExpression ce = engine.compileComplex("z*z + c*exp(i*z)/(1+mag(z))");
+        int rows = 100_000;
+        Random rnd = new Random(7);
+        double[] zr = new double[rows], zi = new double[rows], cr = new double[rows], ci = new double[rows];
+        for (int k = 0; k < rows; k++) { zr[k] = rnd.nextGaussian(); zi[k] = rnd.nextGaussian(); cr[k] = rnd.nextGaussian(); ci[k] = rnd.nextGaussian(); }
+        int zSlot = ce.variables().indexOf("z");
+        double[][] re = new double[2][], im = new double[2][];
+        re[zSlot] = zr; im[zSlot] = zi; re[1 - zSlot] = cr; im[1 - zSlot] = ci;
+        double[] outRe = new double[rows], outIm = new double[rows];
+        double[] vr = new double[2], vi = new double[2];
+        MutableComplex out = new MutableComplex();
+        measure("complex expression, scalar evaluate", rows, () -> {
+            double s = 0;
+            for (int k = 0; k < rows; k++) {
+                vr[0] = re[0][k]; vi[0] = im[0][k]; vr[1] = re[1][k]; vi[1] = im[1][k];
+                s += ce.evaluate(vr, vi, out).re;
+            }
+            sink = s;
+        });
+        measure("complex expression, SoA evaluateBatch", rows, () -> { ce.evaluateBatch(re, im, outRe, outIm); sink = outRe[0]; });
+        boolean same = true;
+        for (int k = 0; k < rows; k++) {
+            vr[0] = re[0][k]; vi[0] = im[0][k]; vr[1] = re[1][k]; vi[1] = im[1][k];
+            ce.evaluate(vr, vi, out);
+            same &= out.re == outRe[k] && out.im == outIm[k];
+        }
+        before = allocatedBytes();
+        for (int k = 0; k < rows; k++) sink = ce.evaluate(vr, vi, out).re;
+        long scalarBytes = allocatedBytes() - before;
+        System.out.printf("%-48s %s, scalar %.3f bytes/eval%n", "batch matches scalar", same ? "yes" : "NO", (double) scalarBytes / rows);
+    }
+
+    // The BigInteger implementations Combinatorics replaced, kept as baseline and reference
+    static double legacyFactorial(int n) {
+        java.math.BigInteger res = java.math.BigInteger.ONE;
+        for (int i = 2; i <= n; i++) res = res.multiply(java.math.BigInteger.valueOf(i));
+        return res.doubleValue();
+    }
+    static java.math.BigInteger legacyBinomial(int n, int k) {
+        k = Math.min(k, n - k);
+        java.math.BigInteger num = java.math.BigInteger.ONE, den = java.math.BigInteger.ONE;
+        for (int i = 1; i <= k; i++) {
+            num = num.multiply(java.math.BigInteger.valueOf(n - (k - i)));
+            den = den.multiply(java.math.BigInteger.valueOf(i));
+        }
+        return num.divide(den);
+    }
+    static double legacyPermutations(int n, int r) {
+        java.math.BigInteger res = java.math.BigInteger.ONE;
+        for (int i = 0; i < r; i++) res = res.multiply(java.math.BigInteger.valueOf(n - i));
+        return res.doubleValue();
+    }
+
+    /**
+     * Table/long/lgamma combinatorics against the old per-call BigInteger code, plus exactness:
+     * bit-identical wherever the result fits a long (and for every factorial), relative error
+     * elsewhere, and correctly rounded in exact mode.
+     */
+    static void combinatorics() {
+        Random rnd = new Random(3);
+        int m = 1 << 12;
+        int[] fn = new int[m], cn = new int[m], ck = new int[m];
+        for (int i = 0; i < m; i++) {
+            fn[i] = rnd.nextInt(171);
+            cn[i] = 1 + rnd.nextInt(60); ck[i] = rnd.nextInt(cn[i] + 1);
+        }
+        measure("legacy fact(0..170)", m, () -> { double s = 0; for (int n: fn) s += legacyFactorial(n); sink = s; });
+        measure("Combinatorics.factorial(0..170)", m, () -> { double s = 0; for (int n: fn) s += Combinatorics.factorial(n); sink = s; });
+        measure("legacy nCr(n<=60)", m, () -> { double s = 0; for (int i = 0; i < m; i++) s += legacyBinomial(cn[i], ck[i]).longValue(); sink = s; });
+        measure("Combinatorics.nCr(n<=60)", m, () -> { double s = 0; for (int i = 0; i < m; i++) s += Combinatorics.nCr(cn[i], ck[i], false); sink = s; });
+        measure("legacy nCr(1000, 10)", 1, () -> sink = legacyBinomial(1000, 10).longValue());
+        measure("Combinatorics.nCr(1000, 10)", 1, () -> sink = Combinatorics.nCr(1000, 10, false));
+        measure("legacy nPr(20, 10)", 1, () -> sink = legacyPermutations(20, 10));
+        measure("Combinatorics.nPr(20, 10)", 1, () -> sink = Combinatorics.nPr(20, 10, false));
+        measure("legacy nPr(1000, 500)", 1, () -> sink = legacyPermutations(1000, 500));
+        measure("Combinatorics.nPr(1000, 500)", 1, () -> sink = Combinatorics.nPr(1000, 500, false));
+
+        long factMismatch = 0, longMismatch = 0, exactMismatch = 0, checked = 0;
+        double maxRel = 0;
+        for (int n = 0; n <= 300; n++) if (Combinatorics.factorial(n) != legacyFactorial(n)) factMismatch++;
+        for (int n = 0; n <= 400; n++) {
+            for (int k = 0; k <= n; k++) {
+                java.math.BigInteger c = legacyBinomial(n, k);
+                double p = legacyPermutations(n, k);
+                double gc = Combinatorics.nCr(n, k, false), gp = Combinatorics.nPr(n, k, false);
+                checked += 2;
+                if (c.bitLength() < 63 ? gc != c.doubleValue() : false) longMismatch++;
+                if (p < 0x1p63 ? gp != p : false) longMismatch++;
+                double ec = c.doubleValue();
+                if (!Double.isInfinite(ec)) maxRel = Math.max(maxRel, Math.abs(gc - ec) / ec);
+                if (!Double.isInfinite(p)) maxRel = Math.max(maxRel, Math.abs(gp - p) / p);
+            }
+        }
+        for (int n = 0; n <= 400; n++) {
+            for (int k = 0; k <= n; k++) {
+                if (Combinatorics.nCr(n, k, true) != legacyBinomial(n, k).doubleValue()) exactMismatch++;
+                if (Combinatorics.nPr(n, k, true) != legacyPermutations(n, k)) exactMismatch++;
+            }
+        }
+        System.out.printf("%-48s fact %d, long-range %d, exact mode %d of %d; max rel error %.2e%n",
+                "mismatches vs BigInteger (n<=400)", factMismatch, longMismatch, exactMismatch, checked, maxRel);
+    }
+
+    /** Optimized against unoptimized programs, with the optimizer's report and a bit-identity check. */
+    static void optimizer() {
+        CalculatorEngine plain = new CalculatorEngine(), opt = new CalculatorEngine();
+        plain.setOptimizing(false);
+        int n = 100_000;
+        String[] formulas = {"2*3.14159*r*r", "sqrt(2)/2*x+1*y", "sin(x)*sin(x)+cos(x)*cos(x)", "((x+1)*(x-1))^2/(1+(x+1)*(x-1))", FORMULAS[3]};
+        for (String f: formulas) {
+            CompiledExpression a = plain.compile(f), b = opt.compile(f);
+            double[] values = new double[a.variables().size()];
+            Arrays.fill(values, 1.5);
+            double ta = measure("unoptimized " + f, n, () -> {
+                double s = 0; for (int i = 0; i < n; i++) s += a.evaluate(values); sink = s;
+            });
+            double tb = measure("optimized   " + f, n, () -> {
+                double s = 0; for (int i = 0; i < n; i++) s += b.evaluate(values); sink = s;
+            });
+            boolean same = Double.doubleToRawLongBits(a.evaluate(values)) == Double.doubleToRawLongBits(b.evaluate(values));
+            System.out.printf("%-48s %12.1fx, identical %s%n", "  speedup", ta / tb, same ? "yes" : "NO");
+            for (String r: b.optimizations()) System.out.println("    " + r);
+        }
+    }
+
+    /** Five-point Laplacian on a g×g grid: symmetric positive-definite, about 5 nonzeros per row. */
+    static SparseMatrix poisson(int g) {
+        int n = g*g, k = 0;
+        int[] ri = new int[5*n], ci = new int[5*n];
+        double[] v = new double[5*n];
+        for (int i=0;i<g;i++) for (int j=0;j<g;j++) {
+            int p = i*g+j;
+            ri[k] = p; ci[k] = p; v[k++] = 4;
+            for (int q: new int[]{i > 0 ? p-g : -1, i < g-1 ? p+g : -1, j > 0 ? p-1 : -1, j < g-1 ? p+1 : -1}) {
+                if (q >= 0) { ri[k] = p; ci[k] = q; v[k++] = -1; }
+            }
+        }
+        return SparseMatrix.fromTriplets(n, n, Arrays.copyOf(ri, k), Arrays.copyOf(ci, k), Arrays.copyOf(v, k));
+    }
+
+    /**
+     * CSR against dense: memory, matrix-vector throughput (dense, sequential and row-partitioned
+     * SpMV) and conjugate gradient against LU, then a 100K-unknown system the dense class cannot hold.
+     */
+    static void sparseMatrix() {
+        for (int g: new int[]{32, 45, 316}) {
+            SparseMatrix a = poisson(g);
+            int n = a.rows;
+            System.out.printf("%-48s %d nonzeros, %.1f KB sparse vs %.1f MB dense%n", "poisson " + n + "x" + n,
+                    a.nonZeros(), a.memoryBytes() / 1024.0, 8.0 * n * n / (1 << 20));
+            double[] x = new double[n], y = new double[n];
+            for (int i=0;i<n;i++) x[i] = Math.sin(i);
+            if ((long) n * n * 8 * 2 < Runtime.getRuntime().maxMemory()) {
+                Matrix d = a.toDense(), xm = Matrix.fromRowMajor(n, 1, x);
+                measure("  dense A*x", 1, () -> sink = d.multiply(xm).get(0, 0));
+                Matrix rhs = d.multiply(xm);
+                measure("  dense LU solve", 1, 1, () -> sink = d.solve(rhs).get(0, 0));
+            }
+            measure("  sparse A*x, sequential", 1, () -> { a.multiplySequential(x, y); sink = y[0]; });
+            measure("  sparse A*x, row-partitioned", 1, () -> { a.multiply(x, y); sink = y[0]; });
+            double[] b = a.multiply(x);
+            measure("  sparse conjugate gradient solve", 1, 1, () -> sink = a.solve(b)[0]);
+        }
+    }
+}
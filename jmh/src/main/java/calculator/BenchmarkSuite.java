@@ -0,0 +1,250 @@
+package calculator;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.function.Supplier;
+
+/**
+ * Fixed regression suite over the engine's hot paths, run the way a JMH harness would: every
+ * case gets its own forked JVM (fixed heap, so JIT and GC state never leak between cases),
+ * timed warmup iterations, then measured iterations whose ns/op are pooled across forks.
+ * Inputs are built from fixed seeds, so two runs on one machine measure the same work.
+ * <pre>
+ *   java calculator.BenchmarkSuite                           run and print
+ *   java calculator.BenchmarkSuite --save baseline.tsv       run and record a baseline
+ *   java calculator.BenchmarkSuite --compare baseline.tsv    run and report changes; exit 1 on regression
+ *   options: --filter regex  --forks n  --warmup n  --iterations n  --time-ms n  --threshold pct
+ * </pre>
+ * A case counts as a regression when it is more than {@code --threshold} percent (default 10)
+ * slower than the baseline and the gap is larger than the two runs' combined error.
+ */
+public final class BenchmarkSuite {
+    static volatile double sink;
+
+    private static final class Case {
+        final String name; final int ops; final Supplier<Runnable> setup;
+        Case(String name, int ops, Supplier<Runnable> setup) { this.name = name; this.ops = ops; this.setup = setup; }
+    }
+
+    /** Mean ns/op with its standard deviation over all measured iterations. */
+    static final class Score {
+        final double mean, error;
+        Score(double mean, double error) { this.mean = mean; this.error = error; }
+    }
+
+    private static final Map<String, Case> CASES = new LinkedHashMap<>();
+    static {
+        evaluation("eval.simple", "2+3*x");
+        evaluation("eval.nested", "((((x+1)*2-3)/4+5)^2-((y-1)*(y+1)))/(1+((x*y)-(x/y)))");
+        evaluation("eval.functions", "sin(x)*cos(y)+sqrt(abs(x))+ln(1+x*x)+atan(y/x)+exp(-x)");
+        evaluation("eval.variables", "a*x+b*y+c*z+d*w+e*v+f*u+g*t+h*s");
+        add("eval.parse-and-evaluate", 1000, () -> {
+            CalculatorEngine engine = new CalculatorEngine();
+            engine.disableParseCache();
+            engine.setVariable("x", 1.5);
+            return () -> { double s = 0; for (int i = 0; i < 1000; i++) s += engine.evaluate("sin(x)*2+x^2/3"); sink = s; };
+        });
+        for (int n: new int[]{64, 128, 256}) {
+            add("matrix.multiply." + n, 1, () -> {
+                Matrix a = Benchmark.randomMatrix(n, 1), b = Benchmark.randomMatrix(n, 2);
+                return () -> sink = a.multiply(b).get(0, 0);
+            });
+            add("matrix.determinant." + n, 1, () -> {
+                Matrix a = Benchmark.randomMatrix(n, 3);
+                return () -> sink = a.determinant();
+            });
+            add("matrix.inverse." + n, 1, () -> {
+                Matrix a = Benchmark.randomMatrix(n, 4);
+                return () -> sink = a.inverse().get(0, 0);
+            });
+        }
+        add("sparse.spmv.poisson-100k", 1, () -> {
+            SparseMatrix a = Benchmark.poisson(316);
+            double[] x = new double[a.rows], y = new double[a.rows];
+            for (int i = 0; i < x.length; i++) x[i] = Math.sin(i);
+            return () -> { a.multiply(x, y); sink = y[0]; };
+        });
+        add("complex.number-arithmetic", 1000, () -> {
+            ComplexNumber c = new ComplexNumber(0.3, -0.4);
+            return () -> {
+                ComplexNumber z = new ComplexNumber(0, 0);
+                for (int i = 0; i < 1000; i++) z = z.mul(z).add(c).div(new ComplexNumber(1.5, 0.5));
+                sink = z.re;
+            };
+        });
+        add("complex.expression", 1000, () -> {
+            CalculatorEngine engine = new CalculatorEngine();
+            ComplexExpression ce = engine.compileComplex("exp(i*t)*z^2+sqrt(z)/(1+i)");
+            double[] re = new double[ce.variables().size()], im = new double[re.length];
+            MutableComplex out = new MutableComplex();
+            return () -> {
+                double s = 0;
+                for (int i = 0; i < 1000; i++) { re[0] = i * 1e-3; im[0] = 0.5; re[1] = 0.25; s += ce.evaluate(re, im, out).re; }
+                sink = s;
+            };
+        });
+        add("history.append", 1000, () -> {
+            HistoryManager hm = new HistoryManager(tempHistory("history-append").toString());
+            int[] calls = {0};
+            // empty the store every 100k entries so its size stays bounded however long the iterations run
+            return () -> {
+                if (++calls[0] % 100 == 0) hm.clear();
+                for (int i = 0; i < 1000; i++) hm.append("a*sin(x)+b", "3.14159");
+            };
+        });
+        add("history.read-10k", 1, () -> {
+            HistoryManager hm = new HistoryManager(tempHistory("history-read").toString());
+            for (int i = 0; i < 10_000; i++) hm.append("a*sin(x)+" + i, Double.toString(i * 0.5));
+            return () -> sink = hm.readAll().size();
+        });
+    }
+
+    private static void add(String name, int ops, Supplier<Runnable> setup) { CASES.put(name, new Case(name, ops, setup)); }
+
+    // the engine evaluates 1000 times per call with every variable bound to a fixed value
+    private static void evaluation(String name, String expr) {
+        add(name, 1000, () -> {
+            CalculatorEngine engine = new CalculatorEngine();
+            CompiledExpression ce = engine.compile(expr);
+            double[] values = new double[ce.variables().size()];
+            for (int s = 0; s < values.length; s++) values[s] = 1.25 + 0.5 * s;
+            return () -> { double sum = 0; for (int i = 0; i < 1000; i++) sum += ce.evaluate(values); sink = sum; };
+        });
+    }
+
+    // history.txt in a fresh directory, so the store directory next to it is removed with it on exit
+    private static Path tempHistory(String prefix) {
+        try {
+            Path dir = Files.createTempDirectory(prefix);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try { Benchmark.deleteTree(dir); } catch (IOException ignored) { }
+            }));
+            return dir.resolve("history.txt");
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> opts = new HashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("--") || i + 1 >= args.length) throw new RuntimeException("Usage: java calculator.BenchmarkSuite [--save file] [--compare file] [--filter regex] [--forks n] [--warmup n] [--iterations n] [--time-ms n] [--threshold pct]");
+            opts.put(args[i].substring(2), args[++i]);
+        }
+        int warmup = Integer.parseInt(opts.getOrDefault("warmup", "5"));
+        int iterations = Integer.parseInt(opts.getOrDefault("iterations", "5"));
+        long timeMs = Long.parseLong(opts.getOrDefault("time-ms", "500"));
+        if (opts.containsKey("run")) { runChild(opts.get("run"), warmup, iterations, timeMs); return; }
+
+        int forks = Integer.parseInt(opts.getOrDefault("forks", "2"));
+        double threshold = Double.parseDouble(opts.getOrDefault("threshold", "10"));
+        String filter = opts.getOrDefault("filter", ".*");
+        Map<String, Score> baseline = opts.containsKey("compare") ? load(Paths.get(opts.get("compare"))) : null;
+
+        Map<String, Score> results = new LinkedHashMap<>();
+        for (Case c: CASES.values()) {
+            if (!c.name.matches(filter)) continue;
+            List<Double> samples = new ArrayList<>();
+            for (int f = 0; f < forks; f++) samples.addAll(fork(c.name, warmup, iterations, timeMs));
+            Score s = score(samples);
+            results.put(c.name, s);
+            System.out.printf("%-36s %14.1f +- %10.1f ns/op%n", c.name, s.mean, s.error);
+        }
+        if (opts.containsKey("save")) {
+            save(Paths.get(opts.get("save")), results);
+            System.out.println("baseline written to " + opts.get("save"));
+        }
+        if (baseline != null && !compare(baseline, results, filter, threshold)) System.exit(1);
+    }
+
+    // one forked JVM per case and fork; the child prints one "ITERATION <ns/op>" line per measurement
+    private static List<Double> fork(String name, int warmup, int iterations, long timeMs) throws IOException, InterruptedException {
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        ProcessBuilder pb = new ProcessBuilder(java, "-Xms1g", "-Xmx1g", "-XX:+UseParallelGC",
+                "-cp", System.getProperty("java.class.path"), BenchmarkSuite.class.getName(),
+                "--run", name, "--warmup", "" + warmup, "--iterations", "" + iterations, "--time-ms", "" + timeMs);
+        pb.redirectErrorStream(true);
+        Process p = pb.start();
+        List<Double> samples = new ArrayList<>();
+        StringBuilder other = new StringBuilder();
+        try (BufferedReader r = new BufferedReader(new InputStreamReader(p.getInputStream(), StandardCharsets.UTF_8))) {
+            for (String line; (line = r.readLine()) != null; ) {
+                if (line.startsWith("ITERATION ")) samples.add(Double.parseDouble(line.substring(10)));
+                else other.append(line).append('\n');
+            }
+        }
+        if (p.waitFor() != 0 || samples.isEmpty()) throw new RuntimeException("Benchmark " + name + " failed:\n" + other);
+        return samples;
+    }
+
+    private static void runChild(String name, int warmup, int iterations, long timeMs) {
+        Case c = CASES.get(name);
+        if (c == null) throw new RuntimeException("Unknown benchmark " + name);
+        Runnable body = c.setup.get();
+        for (int i = 0; i < warmup; i++) iteration(body, c.ops, timeMs);
+        for (int i = 0; i < iterations; i++) System.out.println("ITERATION " + iteration(body, c.ops, timeMs));
+    }
+
+    // runs body for at least timeMs and returns ns per operation
+    private static double iteration(Runnable body, int ops, long timeMs) {
+        long calls = 0, start = System.nanoTime(), elapsed;
+        do { body.run(); calls++; elapsed = System.nanoTime() - start; } while (elapsed < timeMs * 1_000_000L);
+        return (double) elapsed / (calls * ops);
+    }
+
+    static Score score(List<Double> samples) {
+        double mean = 0, var = 0;
+        for (double s: samples) mean += s;
+        mean /= samples.size();
+        for (double s: samples) var += (s - mean) * (s - mean);
+        return new Score(mean, samples.size() > 1 ? Math.sqrt(var / (samples.size() - 1)) : 0);
+    }
+
+    private static String environment() {
+        return "java " + System.getProperty("java.version") + ", " + System.getProperty("os.name") + " " + System.getProperty("os.arch")
+                + ", " + Runtime.getRuntime().availableProcessors() + " cpus";
+    }
+
+    // tab-separated: name, mean ns/op, error; '#' lines are comments, the first records the environment
+    private static void save(Path file, Map<String, Score> results) throws IOException {
+        try (BufferedWriter w = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            w.write("# " + environment() + "\n");
+            for (Map.Entry<String, Score> e: results.entrySet()) w.write(e.getKey() + "\t" + e.getValue().mean + "\t" + e.getValue().error + "\n");
+        }
+    }
+
+    private static Map<String, Score> load(Path file) throws IOException {
+        Map<String, Score> scores = new LinkedHashMap<>();
+        for (String line: Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            if (line.startsWith("# ")) {
+                if (!line.substring(2).equals(environment())) System.out.println("note: baseline recorded on " + line.substring(2) + ", now " + environment());
+                continue;
+            }
+            if (line.isEmpty() || line.startsWith("#")) continue;
+            String[] f = line.split("\t");
+            if (f.length < 3) throw new RuntimeException("Malformed baseline line: " + line);
+            scores.put(f[0], new Score(Double.parseDouble(f[1]), Double.parseDouble(f[2])));
+        }
+        return scores;
+    }
+
+    /** Prints the change against the baseline for every case the filter selects; false if any regressed. */
+    static boolean compare(Map<String, Score> baseline, Map<String, Score> results, String filter, double thresholdPct) {
+        System.out.printf("%n%-36s %14s %14s %9s%n", "benchmark", "baseline", "current", "change");
+        int regressions = 0;
+        for (Map.Entry<String, Score> e: results.entrySet()) {
+            Score base = baseline.get(e.getKey()), cur = e.getValue();
+            if (base == null) { System.out.printf("%-36s %14s %14.1f %9s%n", e.getKey(), "-", cur.mean, "new"); continue; }
+            double change = (cur.mean - base.mean) / base.mean * 100;
+            boolean significant = Math.abs(cur.mean - base.mean) > cur.error + base.error;
+            String verdict = !significant ? "" : change > thresholdPct ? "  REGRESSION" : change < -thresholdPct ? "  improved" : "";
+            if (verdict.equals("  REGRESSION")) regressions++;
+            System.out.printf("%-36s %14.1f %14.1f %+8.1f%%%s%n", e.getKey(), base.mean, cur.mean, change, verdict);
+        }
+        for (String name: baseline.keySet()) if (name.matches(filter) && !results.containsKey(name)) System.out.printf("%-36s %14.1f %14s%n", name, baseline.get(name).mean, "not run");
+        System.out.println(regressions == 0 ? "no regressions" : regressions + " regression(s) over " + thresholdPct + "%");
+        return regressions == 0;
+    }
+}
@@ -0,0 +1,33 @@
+package calculator;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.annotations.Benchmark;
+
+/** One step of {@code (z*z+c)/d} on {@link ComplexNumber}, and compiled complex-expression evaluation. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 5, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@Fork(value = 3, jvmArgsAppend = {"-Xms1g", "-Xmx1g", "-XX:+UseParallelGC"})
+public class ComplexBenchmark {
+    private ComplexNumber z = new ComplexNumber(0.3, 0.2), c = new ComplexNumber(0.3, -0.4), d = new ComplexNumber(1.5, 0.5);
+    private ComplexExpression expression;
+    private double[] re, im;
+    private final MutableComplex out = new MutableComplex();
+
+    @Setup
+    public void setup() {
+        expression = new CalculatorEngine().compileComplex("exp(i*t)*z^2+sqrt(z)/(1+i)");
+        re = new double[expression.variables().size()];
+        im = new double[re.length];
+        re[0] = 0.5; im[0] = 0.5; re[1] = 0.25;
+    }
+
+    @Benchmark
+    public ComplexNumber numberArithmetic() { return z.mul(z).add(c).div(d); }
+
+    @Benchmark
+    public double expression() { return expression.evaluate(re, im, out).re; }
+}
@@ -0,0 +1,52 @@
+package calculator;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.annotations.Benchmark;
+
+/**
+ * Compiled evaluation of the {@link BenchmarkSuite} expressions, and parse + evaluate with the
+ * parse cache off. Every expression reads at least one variable from the state, so the optimizer
+ * cannot fold it to a constant.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 5, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@Fork(value = 3, jvmArgsAppend = {"-Xms1g", "-Xmx1g", "-XX:+UseParallelGC"})
+public class EvaluationBenchmark {
+    @State(Scope.Thread)
+    public static class Compiled {
+        @Param({"2+3*x",
+                "((((x+1)*2-3)/4+5)^2-((y-1)*(y+1)))/(1+((x*y)-(x/y)))",
+                "sin(x)*cos(y)+sqrt(abs(x))+ln(1+x*x)+atan(y/x)+exp(-x)",
+                "a*x+b*y+c*z+d*w+e*v+f*u+g*t+h*s"})
+        public String expression;
+
+        CompiledExpression compiled;
+        double[] values;
+
+        @Setup
+        public void setup() {
+            compiled = new CalculatorEngine().compile(expression);
+            values = new double[compiled.variables().size()];
+            for (int s = 0; s < values.length; s++) values[s] = 1.25 + 0.5 * s;
+        }
+    }
+
+    private CalculatorEngine engine;
+
+    @Setup
+    public void setup() {
+        engine = new CalculatorEngine();
+        engine.disableParseCache();
+        engine.setVariable("x", 1.5);
+    }
+
+    @Benchmark
+    public double evaluate(Compiled c) { return c.compiled.evaluate(c.values); }
+
+    @Benchmark
+    public double parseAndEvaluate() { return engine.evaluate("sin(x)*2+x^2/3"); }
+}
@@ -0,0 +1,54 @@
+package calculator;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.annotations.Benchmark;
+
+/**
+ * History appends and reading back a 10,000-entry history. Appends go to a fresh store every
+ * iteration, so it only grows by what one iteration writes.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 5, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@Fork(value = 3, jvmArgsAppend = {"-Xms1g", "-Xmx1g", "-XX:+UseParallelGC"})
+public class HistoryBenchmark {
+    private Path appendDir, readDir;
+    private HistoryManager appender, reader;
+
+    @Setup(Level.Trial)
+    public void fill() throws IOException {
+        readDir = Files.createTempDirectory("history-read");
+        reader = new HistoryManager(readDir.resolve("history.txt").toString());
+        for (int i = 0; i < 10_000; i++) reader.append("a*sin(x)+" + i, Double.toString(i * 0.5));
+    }
+
+    @Setup(Level.Iteration)
+    public void open() throws IOException {
+        appendDir = Files.createTempDirectory("history-append");
+        appender = new HistoryManager(appendDir.resolve("history.txt").toString());
+    }
+
+    @TearDown(Level.Iteration)
+    public void discard() throws IOException {
+        appender.close();
+        calculator.Benchmark.deleteTree(appendDir);
+    }
+
+    @TearDown(Level.Trial)
+    public void delete() throws IOException {
+        reader.close();
+        calculator.Benchmark.deleteTree(readDir);
+    }
+
+    @Benchmark
+    public String append() { return appender.append("a*sin(x)+b", "3.14159"); }
+
+    @Benchmark
+    public List<String> read10k() { return reader.readAll(); }
+}
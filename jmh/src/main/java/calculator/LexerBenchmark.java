@@ -0,0 +1,30 @@
+package calculator;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.annotations.Benchmark;
+
+/** {@link Lexer} tokenization alone, from a short arithmetic line to a long function-heavy one. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 5, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@Fork(value = 3, jvmArgsAppend = {"-Xms1g", "-Xmx1g", "-XX:+UseParallelGC"})
+public class LexerBenchmark {
+    @Param({"2+3*x",
+            "((((x+1)*2-3)/4+5)^2-((y-1)*(y+1)))/(1+((x*y)-(x/y)))",
+            "sin(x)*cos(y)+sqrt(abs(x))+ln(1+x*x)+atan(y/x)+exp(-x)",
+            "1.5e-3*alpha+2.25E+2*beta-nCr(12,5)/fact(7)+0.000125*gamma"})
+    public String expression;
+
+    private final Set<String> functions = new HashSet<>(Arrays.asList(
+            "sin","cos","tan","asin","acos","atan","ln","log","sqrt","abs","fact","nCr","nPr","exp","mag","conj"));
+
+    @Benchmark
+    public List<Token> tokenize() { return new Lexer(expression, functions).tokenize(); }
+}
@@ -0,0 +1,34 @@
+package calculator;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.annotations.Benchmark;
+
+/** Dense multiply, LU determinant and LU inverse of seeded random matrices. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 5, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@Fork(value = 3, jvmArgsAppend = {"-Xms1g", "-Xmx1g", "-XX:+UseParallelGC"})
+public class MatrixBenchmark {
+    @Param({"64", "128", "256"})
+    public int n;
+
+    private Matrix a, b;
+
+    @Setup
+    public void setup() {
+        a = calculator.Benchmark.randomMatrix(n, 1);
+        b = calculator.Benchmark.randomMatrix(n, 2);
+    }
+
+    @Benchmark
+    public Matrix multiply() { return a.multiply(b); }
+
+    @Benchmark
+    public double determinant() { return a.determinant(); }
+
+    @Benchmark
+    public Matrix inverse() { return a.inverse(); }
+}
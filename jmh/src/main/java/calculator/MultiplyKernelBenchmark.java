@@ -0,0 +1,40 @@
+package calculator;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.annotations.Benchmark;
+
+/**
+ * The three dense multiply kernels side by side from 64 to 4096. The naive kernel at 4096 takes
+ * minutes per call; narrow the sweep with {@code -p n=...} or {@code -p kernel=...}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g", "-XX:+UseParallelGC"})
+public class MultiplyKernelBenchmark {
+    @Param({"64", "256", "1024", "4096"})
+    public int n;
+
+    @Param({"naive", "blocked", "parallel"})
+    public String kernel;
+
+    private Matrix a, b;
+
+    @Setup
+    public void setup() {
+        a = calculator.Benchmark.randomMatrix(n, 1);
+        b = calculator.Benchmark.randomMatrix(n, 2);
+    }
+
+    @Benchmark
+    public Matrix multiply() {
+        return switch (kernel) {
+            case "naive" -> a.multiplyNaive(b);
+            case "blocked" -> a.multiplyBlocked(b);
+            default -> a.multiplyParallel(b);
+        };
+    }
+}
@@ -0,0 +1,32 @@
+package calculator;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.infra.Blackhole;
+
+/** Sparse matrix-vector product on the 5-point Poisson matrix of a 316x316 grid (~100k rows). */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 5, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@Fork(value = 3, jvmArgsAppend = {"-Xms1g", "-Xmx1g", "-XX:+UseParallelGC"})
+public class SparseBenchmark {
+    private SparseMatrix a;
+    private double[] x, y;
+
+    @Setup
+    public void setup() {
+        a = calculator.Benchmark.poisson(316);
+        x = new double[a.rows];
+        y = new double[a.rows];
+        for (int i = 0; i < x.length; i++) x[i] = Math.sin(i);
+    }
+
+    @Benchmark
+    public void spmv(Blackhole bh) {
+        a.multiply(x, y);
+        bh.consume(y);
+    }
+}
@@ -0,0 +1,205 @@
+package calculator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Appends history entries to a {@link HistoryStore} from a bounded queue on a background
+ * thread. Entries queued within one flush interval (or until the batch size is reached) go to
+ * the store in a single {@link HistoryStore#appendAll}, so callers never wait for the disk
+ * unless the queue is full.
+ * <p>
+ * Producers queue under a shared lock and {@link #close} queues its shutdown marker under the
+ * exclusive one, so an entry is either queued ahead of the marker (and written) or rejected.
+ */
+public final class AsyncHistoryWriter implements AutoCloseable {
+    public enum FsyncPolicy { NEVER, PER_BATCH }
+    /** What {@link #append} does when the queue is full. */
+    public enum Backpressure { BLOCK, DROP, FAIL }
+
+    public static final class Options {
+        int queueCapacity = 8192;
+        long flushIntervalMillis = 50;
+        int maxBatchBytes = 64 * 1024;
+        FsyncPolicy fsync = FsyncPolicy.NEVER;
+        Backpressure backpressure = Backpressure.BLOCK;
+
+        public Options queueCapacity(int n) { if (n <= 0) throw new RuntimeException("Queue capacity must be positive"); queueCapacity = n; return this; }
+        public Options flushIntervalMillis(long ms) { if (ms < 0) throw new RuntimeException("Negative flush interval"); flushIntervalMillis = ms; return this; }
+        public Options maxBatchBytes(int n) { if (n <= 0) throw new RuntimeException("Batch size must be positive"); maxBatchBytes = n; return this; }
+        public Options fsync(FsyncPolicy p) { fsync = p; return this; }
+        public Options backpressure(Backpressure b) { backpressure = b; return this; }
+    }
+
+    private static final Object SHUTDOWN = new Object();
+
+    private final Options options;
+    private final BlockingQueue<Object> queue;
+    private final HistoryStore store;
+    private final Thread writer;
+    private final LongAdder written = new LongAdder(), dropped = new LongAdder();
+    // read side: append/flush while queueing; write side: close while queueing the shutdown marker
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private volatile boolean closed;
+    private volatile RuntimeException failure;
+
+    /** The store stays owned by the caller; {@link #close} drains into it but does not close it. */
+    public AsyncHistoryWriter(HistoryStore store, Options options) {
+        this.options = options;
+        this.queue = new ArrayBlockingQueue<>(options.queueCapacity);
+        this.store = store;
+        this.writer = new Thread(this::run, "history-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /** Queues one entry; applies the back-pressure policy if the queue is full. Returns false if it was dropped. */
+    public boolean append(long epochMillis, String expression, String result) {
+        HistoryStore.Entry entry = new HistoryStore.Entry(-1, epochMillis, expression, result);
+        lock.readLock().lock();
+        try {
+            checkOpen();
+            switch (options.backpressure) {
+                case BLOCK:
+                    try {
+                        enqueue(entry);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new RuntimeException("Interrupted while queueing history entry");
+                    }
+                    return true;
+                case DROP:
+                    if (queue.offer(entry)) return true;
+                    dropped.increment();
+                    return false;
+                case FAIL:
+                    if (!queue.offer(entry)) throw new RuntimeException("History queue full");
+                    return true;
+                default:
+                    throw new AssertionError(options.backpressure);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Blocks until every entry queued before this call has been written (and synced, per policy). */
+    public void flush() {
+        CountDownLatch done = new CountDownLatch(1);
+        lock.readLock().lock();
+        try {
+            checkOpen();
+            enqueue(done);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while flushing history");
+        } finally {
+            lock.readLock().unlock();
+        }
+        try {
+            while (!done.await(100, TimeUnit.MILLISECONDS)) {
+                if (!writer.isAlive()) break;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while flushing history");
+        }
+        rethrowFailure();
+    }
+
+    /** Stops accepting entries, writes everything still queued and syncs the store. */
+    @Override public void close() {
+        lock.writeLock().lock();
+        try {
+            if (closed) return;
+            closed = true;
+            enqueue(SHUTDOWN);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        } catch (RuntimeException e) {
+            // the writer already stopped after an I/O error; reported below
+        } finally {
+            lock.writeLock().unlock();
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        rethrowFailure();
+    }
+
+    public long written() { return written.sum(); }
+    public long dropped() { return dropped.sum(); }
+    public int pending() { return queue.size(); }
+
+    private void checkOpen() {
+        if (closed) throw new RuntimeException("History writer is closed");
+        rethrowFailure();
+        if (!writer.isAlive()) throw new RuntimeException("History writer stopped");
+    }
+
+    // a blocking put that gives up once the writer thread has exited, since nothing would drain the queue
+    private void enqueue(Object o) throws InterruptedException {
+        while (!queue.offer(o, 100, TimeUnit.MILLISECONDS)) {
+            rethrowFailure();
+            if (!writer.isAlive()) throw new RuntimeException("History writer stopped");
+        }
+    }
+    private void rethrowFailure() {
+        RuntimeException e = failure;
+        if (e != null) throw new RuntimeException("History writer failed", e);
+    }
+
+    private void run() {
+        List<HistoryStore.Entry> batch = new ArrayList<>();
+        List<CountDownLatch> waiters = new ArrayList<>();
+        boolean shutdown = false;
+        try {
+            while (!shutdown) {
+                Object first = queue.take();
+                long bytes = 0;
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(options.flushIntervalMillis);
+                Object next = first;
+                // gather until the batch is full, the interval elapses, or someone needs it on disk now
+                while (true) {
+                    if (next == SHUTDOWN) { shutdown = true; break; }
+                    if (next instanceof CountDownLatch) { waiters.add((CountDownLatch) next); break; }
+                    HistoryStore.Entry e = (HistoryStore.Entry) next;
+                    batch.add(e);
+                    // record header plus roughly one byte per char
+                    bytes += 16 + e.expression.length() + e.result.length();
+                    if (bytes >= options.maxBatchBytes) break;
+                    next = queue.poll();
+                    if (next == null) {
+                        long wait = deadline - System.nanoTime();
+                        if (wait <= 0) break;
+                        next = queue.poll(wait, TimeUnit.NANOSECONDS);
+                        if (next == null) break;
+                    }
+                }
+                if (!batch.isEmpty()) store.appendAll(batch);
+                written.add(batch.size());
+                batch.clear();
+                if (options.fsync == FsyncPolicy.PER_BATCH || shutdown) store.sync();
+                for (CountDownLatch w: waiters) w.countDown();
+                waiters.clear();
+            }
+        } catch (RuntimeException e) {
+            failure = e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            for (CountDownLatch w: waiters) w.countDown();
+            for (Object o: queue) if (o instanceof CountDownLatch) ((CountDownLatch) o).countDown();
+        }
+    }
+}
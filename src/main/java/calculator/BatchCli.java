@@ -0,0 +1,126 @@
+package calculator;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.ArrayDeque;
+import java.util.concurrent.*;
+
+/**
+ * Headless entry point: evaluates one expression per line from a file or stdin and writes one
+ * result line per input line, in input order. Lines are evaluated in parallel, but at most
+ * {@code --window} are in flight, so memory stays constant for arbitrarily large inputs.
+ * A failing line produces {@code ERROR <line>: <message>} instead of a result.
+ * Throughput and latency percentiles go to stderr when the input is exhausted.
+ * <pre>
+ * java calculator.BatchCli [--in FILE|-] [--out FILE|-] [--threads N] [--window N] [--degrees] [--cache N]
+ * </pre>
+ */
+public class BatchCli {
+    public static void main(String[] args) throws Exception {
+        String in = "-", out = "-";
+        int threads = Runtime.getRuntime().availableProcessors(), window = 0, cacheSize = 10_000;
+        boolean degrees = false;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--in" -> in = args[++i];
+                case "--out" -> out = args[++i];
+                case "--threads" -> threads = Integer.parseInt(args[++i]);
+                case "--window" -> window = Integer.parseInt(args[++i]);
+                case "--degrees" -> degrees = true;
+                case "--cache" -> cacheSize = Integer.parseInt(args[++i]);
+                default -> {
+                    System.err.println("Usage: java calculator.BatchCli [--in FILE|-] [--out FILE|-] [--threads N] [--window N] [--degrees] [--cache N]");
+                    System.exit(2);
+                }
+            }
+        }
+        if (window <= 0) window = threads * 256;
+
+        CalculatorEngine engine = new CalculatorEngine();
+        engine.setDegrees(degrees);
+        if (cacheSize > 0) engine.enableParseCache(cacheSize, ParseCache.Policy.TINY_LFU);
+
+        try (BufferedReader reader = new BufferedReader(in.equals("-")
+                    ? new InputStreamReader(System.in, StandardCharsets.UTF_8)
+                    : Files.newBufferedReader(Paths.get(in), StandardCharsets.UTF_8));
+             Writer writer = new BufferedWriter(out.equals("-")
+                    ? new OutputStreamWriter(System.out, StandardCharsets.UTF_8)
+                    : Files.newBufferedWriter(Paths.get(out), StandardCharsets.UTF_8), 1 << 16)) {
+            Stats stats = run(engine, reader, writer, threads, window);
+            writer.flush();
+            System.err.println(stats);
+        }
+    }
+
+    static final class Stats {
+        long lines, errors, elapsedNanos;
+        final LatencyHistogram latency = new LatencyHistogram();
+        @Override public String toString() {
+            double secs = elapsedNanos / 1e9;
+            return String.format("lines=%d errors=%d elapsed=%.3fs throughput=%.0f lines/s latency %s",
+                    lines, errors, secs, lines / Math.max(secs, 1e-9), latency.summary());
+        }
+    }
+
+    /** Streams {@code reader} through a pool of {@code threads}, writing results to {@code writer} in input order. */
+    static Stats run(CalculatorEngine engine, BufferedReader reader, Writer writer, int threads, int window) throws IOException {
+        Stats stats = new Stats();
+        ExecutorService pool = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "batch-worker");
+            t.setDaemon(true);
+            return t;
+        });
+        ArrayDeque<Future<String>> inFlight = new ArrayDeque<>(window);
+        long start = System.nanoTime();
+        try {
+            String line;
+            long lineNo = 0;
+            while ((line = reader.readLine()) != null) {
+                if (inFlight.size() >= window) writeResult(inFlight.poll(), writer, stats);
+                String expr = line.trim();
+                long n = ++lineNo;
+                inFlight.add(pool.submit(() -> evaluateLine(engine, expr, n, stats.latency)));
+            }
+            while (!inFlight.isEmpty()) writeResult(inFlight.poll(), writer, stats);
+        } finally {
+            pool.shutdownNow();
+        }
+        stats.elapsedNanos = System.nanoTime() - start;
+        return stats;
+    }
+
+    private static String evaluateLine(CalculatorEngine engine, String expr, long lineNo, LatencyHistogram latency) {
+        if (expr.isEmpty()) return "";
+        long t0 = System.nanoTime();
+        try {
+            return CalculatorEngine.format(engine.evaluate(expr));
+        } catch (RuntimeException e) {
+            return "ERROR " + lineNo + ": " + e.getMessage();
+        } catch (StackOverflowError e) {
+            return "ERROR " + lineNo + ": Expression too deeply nested";
+        } catch (Throwable e) {
+            // out of memory and other VM failures end the run; anything else fails just this line
+            if (e instanceof VirtualMachineError) throw e;
+            return "ERROR " + lineNo + ": " + e;
+        } finally {
+            latency.record(System.nanoTime() - t0);
+        }
+    }
+
+    private static void writeResult(Future<String> f, Writer writer, Stats stats) throws IOException {
+        String result;
+        try {
+            result = f.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        }
+        stats.lines++;
+        if (result.startsWith("ERROR ")) stats.errors++;
+        writer.write(result);
+        writer.write('\n');
+    }
+}
@@ -1,3 +1,5 @@
+package calculator;
+
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.*;
@@ -5,10 +7,17 @@ import java.util.List;
 
 public class Calculator extends JFrame implements ActionListener {
     private final JTextField display;
-    private final JTextArea historyArea;
+    private final JList<String> historyList;
+    private final HistoryListModel historyModel = new HistoryListModel();
     private boolean darkTheme = false;
     private final CalculatorEngine engine = new CalculatorEngine();
     private final HistoryManager historyManager = new HistoryManager();
+    private static final int HISTORY_PAGE = 500;
+    // seq of the oldest entry shown (0 once everything is loaded); a refresh bumps the generation
+    // so an older page still in flight is not added below the new contents
+    private long oldestShown = 0;
+    private int historyGeneration;
+    private boolean loadingOlder;
 
     public Calculator() {
         setTitle("Enhanced Java Calculator");
@@ -42,12 +51,17 @@ public class Calculator extends JFrame implements ActionListener {
             grid.add(b);
         }
 
-        // Right: history panel
-        historyArea = new JTextArea();
-        historyArea.setEditable(false);
-        historyArea.setFont(new Font("Monospaced", Font.PLAIN, 12));
-        JScrollPane histScroll = new JScrollPane(historyArea);
+        // Right: history panel; fixed cell size lets JList lay out only the visible rows
+        historyList = new JList<>(historyModel);
+        historyList.setFont(new Font("Monospaced", Font.PLAIN, 12));
+        historyList.setPrototypeCellValue("2026-01-01T00:00:00.000 | 000000000000 = 00000000");
+        JScrollPane histScroll = new JScrollPane(historyList);
         histScroll.setPreferredSize(new Dimension(300, 0));
+        // older pages are read from the store as the list is scrolled towards its end
+        histScroll.getVerticalScrollBar().addAdjustmentListener(e -> {
+            BoundedRangeModel m = histScroll.getVerticalScrollBar().getModel();
+            if (m.getValue() + m.getExtent() >= m.getMaximum() - m.getExtent()) loadOlderHistory();
+        });
 
         JPanel center = new JPanel(new BorderLayout());
         center.add(grid, BorderLayout.CENTER);
@@ -71,6 +85,12 @@ public class Calculator extends JFrame implements ActionListener {
             }
         });
         
+        // history is written by a background thread; drain it before the JVM exits
+        historyManager.enableAsync(new AsyncHistoryWriter.Options());
+        addWindowListener(new WindowAdapter() {
+            @Override public void windowClosing(WindowEvent e) { historyManager.close(); }
+        });
+
         // initial history load and theme
         refreshHistory();
         applyTheme();
@@ -135,11 +155,8 @@ public class Calculator extends JFrame implements ActionListener {
         if (expr.isEmpty()) return;
         try {
             double res = engine.evaluate(expr);
-            String out;
-            if (Math.abs(Math.rint(res) - res) < 1e-10) out = String.format("%.0f", res);
-            else out = Double.toString(res);
-            historyManager.append(expr, out);
-            refreshHistory();
+            String out = CalculatorEngine.format(res);
+            historyModel.add(historyManager.append(expr, out));
             display.setText(out);
             engine.storeMemory(res);
         } catch (Exception ex) {
@@ -147,21 +164,59 @@ public class Calculator extends JFrame implements ActionListener {
         }
     }
 
+    // reads the newest page on a worker thread; rows added while it runs are kept, and on a
+    // read error the list keeps what it shows
     private void refreshHistory() {
-        try {
-            java.util.List<String> lines = historyManager.readAll();
-            StringBuilder sb = new StringBuilder();
-            for (int i = lines.size()-1; i >= 0; i--) sb.append(lines.get(i)).append("\n");
-            historyArea.setText(sb.toString());
-        } catch (Exception e) {
-            historyArea.setText("");
-        }
+        long before = historyManager.nextSeq(), since = historyModel.addCount();
+        int generation = ++historyGeneration;
+        loadingOlder = false;
+        new SwingWorker<List<HistoryStore.Entry>, Void>() {
+            @Override protected List<HistoryStore.Entry> doInBackground() { return historyManager.page(before, HISTORY_PAGE); }
+            @Override protected void done() {
+                if (generation != historyGeneration) return;
+                try {
+                    List<HistoryStore.Entry> page = get();
+                    historyModel.merge(lines(page), since);
+                    oldestShown = page.isEmpty() ? 0 : page.get(page.size() - 1).seq;
+                } catch (Exception e) {
+                    // keep the current contents; the next refresh retries
+                }
+            }
+        }.execute();
     }
+
+    private void loadOlderHistory() {
+        if (loadingOlder || oldestShown == 0) return;
+        loadingOlder = true;
+        long before = oldestShown;
+        int generation = historyGeneration;
+        new SwingWorker<List<HistoryStore.Entry>, Void>() {
+            @Override protected List<HistoryStore.Entry> doInBackground() { return historyManager.page(before, HISTORY_PAGE); }
+            @Override protected void done() {
+                if (generation != historyGeneration) return;
+                loadingOlder = false;
+                try {
+                    List<HistoryStore.Entry> page = get();
+                    historyModel.addOlder(lines(page));
+                    oldestShown = page.isEmpty() ? 0 : page.get(page.size() - 1).seq;
+                } catch (Exception e) {
+                    // leave the list as it is; scrolling retries
+                }
+            }
+        }.execute();
+    }
+
+    private static List<String> lines(List<HistoryStore.Entry> entries) {
+        List<String> out = new java.util.ArrayList<>(entries.size());
+        for (HistoryStore.Entry e: entries) out.add(e.toString());
+        return out;
+    }
+
     private void applyTheme() {
          Color bg = darkTheme ? Color.DARK_GRAY : Color.WHITE;
          Color fg = darkTheme ? Color.WHITE : Color.BLACK;
          display.setBackground(bg); display.setForeground(fg);
-         historyArea.setBackground(bg); historyArea.setForeground(fg);
+         historyList.setBackground(bg); historyList.setForeground(fg);
          getContentPane().setBackground(darkTheme ? Color.GRAY : UIManager.getColor("Panel.background"));
      }
 
@@ -0,0 +1,211 @@
+package calculator;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Expression engine. An engine may be shared between threads: parsed state is immutable,
+ * variables and memory {@code M} live in a {@link ConcurrentHashMap}, and per-request
+ * bindings and angle mode are passed in an {@link EvaluationContext}.
+ */
+public class CalculatorEngine {
+    private volatile boolean degrees = false;
+    private volatile boolean exactCombinatorics = false;
+    private volatile int jitThreshold = 0;
+    private volatile boolean optimize = true;
+    private volatile ParseCache parseCache;
+    private final Map<String, Double> variables = new ConcurrentHashMap<>();
+    private final ThreadLocal<EvaluationContext> threadContext = ThreadLocal.withInitial(() -> new EvaluationContext(this));
+    private final Set<String> functions = new HashSet<>(Arrays.asList(
+            "sin","cos","tan","asin","acos","atan","ln","log","sqrt","abs","fact","nCr","nPr","exp","mag","conj"
+    ));
+
+    public CalculatorEngine() {
+        variables.put("M", 0.0);
+    }
+
+    public void setDegrees(boolean d) { degrees = d; }
+    public boolean isDegrees() { return degrees; }
+    /**
+     * Whether {@code nCr} and {@code nPr} results beyond the long range are computed exactly with
+     * BigInteger rather than from the factorial table or lgamma (see {@link Combinatorics}); off by
+     * default. Read at evaluation time, so it applies to already compiled expressions too.
+     */
+    public void setExactCombinatorics(boolean on) { exactCombinatorics = on; }
+    public boolean isExactCombinatorics() { return exactCombinatorics; }
+    /**
+     * Compiled expressions evaluated this many times are promoted to a method-handle
+     * tier (see {@link MethodHandleCompiler}); 0 disables promotion. Applies to
+     * expressions compiled after the call, so the parse cache is cleared.
+     * <p>
+     * Evaluations are counted per {@link CompiledExpression}. {@link #evaluate(String)} compiles
+     * a fresh instance on every call unless {@link #enableParseCache} is on, so without the cache
+     * only expressions held from {@link #compile} are ever promoted.
+     */
+    public void setJitThreshold(int evaluations) {
+        if (evaluations < 0) throw new RuntimeException("Negative JIT threshold");
+        jitThreshold = evaluations;
+        ParseCache cache = parseCache;
+        if (cache != null) cache.clear();
+    }
+    public int getJitThreshold() { return jitThreshold; }
+    /**
+     * Turns the {@link Optimizer} pass (constant folding, IEEE-exact identities, common
+     * subexpressions) on or off; on by default. Like the JIT threshold it applies to expressions
+     * compiled afterwards, so the parse cache is cleared.
+     */
+    public void setOptimizing(boolean on) {
+        optimize = on;
+        ParseCache cache = parseCache;
+        if (cache != null) cache.clear();
+    }
+    public boolean isOptimizing() { return optimize; }
+    public void storeMemory(double v) { variables.put("M", v); }
+    public double recallMemory() { return getVariable("M"); }
+    /** Atomically adds {@code v} to memory and returns the new value. */
+    public double addToMemory(double v) { return variables.merge("M", v, Double::sum); }
+
+    public double evaluate(String expr) {
+        return compile(expr).evaluate();
+    }
+
+    public double evaluate(String expr, EvaluationContext ctx) {
+        return compile(expr).evaluate(ctx);
+    }
+
+    /** A new evaluation scope; each request or worker thread should use its own. */
+    public EvaluationContext newContext() { return new EvaluationContext(this); }
+
+    // Scope used by the engine-bound evaluate() calls: no local bindings, engine angle mode
+    EvaluationContext threadContext() { return threadContext.get(); }
+
+    /**
+     * Parses {@code expr} once into a program that can be evaluated many times without re-tokenizing.
+     * With a parse cache enabled, repeated expressions return the cached program.
+     */
+    public CompiledExpression compile(String expr) {
+        ParseCache cache = parseCache;
+        if (cache != null) return cache.get(expr, this::parse);
+        return parse(expr);
+    }
+
+    /**
+     * Parses {@code expr} for complex evaluation: {@code i} and literals such as {@code 2.5i} are
+     * imaginary, and real-valued functions extend to the complex plane. Not cached.
+     */
+    public ComplexExpression compileComplex(String expr) {
+        return ComplexExpression.compile(expr, toRPN(expr), this);
+    }
+
+    /** Evaluates {@code expr} over the complex numbers with the engine's variables and angle mode. */
+    public ComplexNumber evaluateComplex(String expr) {
+        return compileComplex(expr).evaluate();
+    }
+
+    private CompiledExpression parse(String expr) {
+        if (!EngineMetrics.isEnabled()) return CompiledExpression.compile(expr, toRPN(expr), this);
+        long t0 = System.nanoTime();
+        boolean ok = false;
+        try {
+            CompiledExpression ce = CompiledExpression.compile(expr, toRPN(expr), this);
+            ok = true;
+            return ce;
+        } finally {
+            EngineMetrics.record(EngineMetrics.Op.PARSE, t0, !ok, expr);
+        }
+    }
+
+    /** Caches up to {@code maxSize} parsed expressions, replacing any existing cache. */
+    public void enableParseCache(int maxSize, ParseCache.Policy policy) { parseCache = new ParseCache(maxSize, policy); }
+    public void disableParseCache() { parseCache = null; }
+    /** The active parse cache (for its hit/miss/eviction counters), or null if caching is off. */
+    public ParseCache getParseCache() { return parseCache; }
+
+    /**
+     * Evaluates {@code expr} once per row. Variables named in {@code columns} take their value
+     * from that array; any other variable uses its current engine value for every row.
+     * Results are written to {@code out}, whose length gives the row count.
+     */
+    public void evaluateBatch(String expr, Map<String, double[]> columns, double[] out) {
+        CompiledExpression ce = compile(expr);
+        List<String> names = ce.variables();
+        double[][] cols = new double[names.size()][];
+        double[] scalars = new double[names.size()];
+        for (int i=0;i<cols.length;i++) {
+            cols[i] = columns.get(names.get(i));
+            if (cols[i] == null) scalars[i] = getVariable(names.get(i));
+        }
+        ce.evaluateBatch(cols, scalars, out);
+    }
+
+    private List<Token> toRPN(String expr) {
+        List<Token> tokens = new Lexer(expr, functions).tokenize();
+        List<Token> output = new ArrayList<>(tokens.size());
+        Deque<Token> ops = new ArrayDeque<>();
+
+        // Shunting-Yard Algorithm
+        for (Token token: tokens) {
+            switch (token.kind) {
+                case NUMBER: case IMAGINARY: case VARIABLE: output.add(token); break;
+                case FUNCTION: case LPAREN: ops.push(token); break;
+                case COMMA:
+                    while (!ops.isEmpty() && ops.peek().kind != Token.Kind.LPAREN) output.add(ops.pop());
+                    if (ops.isEmpty()) throw new RuntimeException("Misplaced comma at column "+token.column);
+                    break;
+                case OPERATOR: case UNARY_MINUS: {
+                    int prec = precedence(token);
+                    while (!ops.isEmpty() && isOperator(ops.peek())) {
+                        int topPrec = precedence(ops.peek());
+                        if ((isLeftAssoc(token) && prec <= topPrec) || (!isLeftAssoc(token) && prec < topPrec)) {
+                            output.add(ops.pop());
+                        } else {
+                            break;
+                        }
+                    }
+                    ops.push(token);
+                    break;
+                }
+                case RPAREN:
+                    while (!ops.isEmpty() && ops.peek().kind != Token.Kind.LPAREN) output.add(ops.pop());
+                    if (ops.isEmpty()) throw new RuntimeException("Mismatched parentheses at column "+token.column);
+                    ops.pop();
+                    if (!ops.isEmpty() && ops.peek().kind == Token.Kind.FUNCTION) output.add(ops.pop());
+                    break;
+                default: throw new RuntimeException("Unknown token "+token);
+            }
+        }
+        while (!ops.isEmpty()) {
+            Token op = ops.pop();
+            if (op.kind == Token.Kind.LPAREN) throw new RuntimeException("Mismatched parentheses at column "+op.column);
+            output.add(op);
+        }
+        return output;
+    }
+
+    // kept as the opcode targets; see Combinatorics
+    static double factorial(double x) { return Combinatorics.factorial(x); }
+    static double nCr(int n, int r, boolean exact) { return Combinatorics.nCr(n, r, exact); }
+    static double nPr(int n, int r, boolean exact) { return Combinatorics.nPr(n, r, exact); }
+    private static boolean isOperator(Token t) { return t.kind == Token.Kind.OPERATOR || t.kind == Token.Kind.UNARY_MINUS; }
+    // unary minus binds tightest (5 > 4 for '^')
+    private static int precedence(Token t) {
+        if (t.kind == Token.Kind.UNARY_MINUS) return 5;
+        switch(t.op()) { case '+': case '-': return 2; case '*': case '/': case '%': return 3; case '^': return 4; default: return 0; }
+    }
+    // '^' and the prefix unary minus bind right-to-left
+    private static boolean isLeftAssoc(Token t) { return t.kind != Token.Kind.UNARY_MINUS && t.op() != '^'; }
+
+    /** Display form of a result: whole numbers without a fraction, anything else via Double.toString. */
+    public static String format(double res) {
+        if (Math.abs(Math.rint(res) - res) < 1e-10) return String.format("%.0f", res);
+        return Double.toString(res);
+    }
+
+    public void setVariable(String name, double v) { variables.put(name, v); }
+    public double getVariable(String name) {
+        Double v = variables.get(name);
+        return v == null ? 0.0 : v;
+    }
+}
+
+
@@ -0,0 +1,168 @@
+package calculator;
+
+import java.math.BigInteger;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Factorials, combinations and permutations for the {@code fact}, {@code nCr} and {@code nPr}
+ * functions. Results are doubles, so only arguments whose result fits the double range are
+ * worth computing exactly:
+ * <ul>
+ * <li>{@code n!} for n &le; 170 comes from a table of correctly rounded values; larger n overflow.</li>
+ * <li>{@code C(n, k)} comes from a Pascal table for n &le; 66 (every entry fits a long) and from
+ *     an overflow-checked multiplicative long loop beyond that, so it is exact whenever the
+ *     result fits a long.</li>
+ * <li>{@code P(n, r)} uses an overflow-checked long product the same way.</li>
+ * <li>Results past the long range come from the factorial table (n &le; 170) or a
+ *     log-factorial (lgamma) evaluation, accurate to about 1e-12 relative.</li>
+ * </ul>
+ * With {@code exact} set (per engine, see {@link CalculatorEngine#setExactCombinatorics}), results
+ * past the long range are computed with BigInteger instead and correctly rounded; exact values
+ * are memoized in a small bounded cache shared by every engine.
+ * The {@code *Exact} methods return the BigInteger itself.
+ */
+public final class Combinatorics {
+    /** Largest n whose factorial is finite as a double. */
+    static final int MAX_FACTORIAL = 170;
+    /** Largest n for which every C(n, k) fits a long. */
+    static final int PASCAL_ROWS = 66;
+    /** Exact results kept in the memo; values longer than MEMO_MAX_BITS are not kept. */
+    static final int MEMO_SIZE = 256, MEMO_MAX_BITS = 1 << 16;
+
+    private static final double[] FACT = new double[MAX_FACTORIAL + 1];
+    private static final double[] LOG_FACT = new double[MAX_FACTORIAL + 1];
+    private static final long[][] PASCAL = new long[PASCAL_ROWS + 1][];
+    private static final Map<Long, BigInteger> MEMO = new LinkedHashMap<>(MEMO_SIZE * 2, 0.75f, true) {
+        @Override protected boolean removeEldestEntry(Map.Entry<Long, BigInteger> e) { return size() > MEMO_SIZE; }
+    };
+
+    static {
+        BigInteger f = BigInteger.ONE;
+        for (int n = 0; n <= MAX_FACTORIAL; n++) {
+            if (n > 1) f = f.multiply(BigInteger.valueOf(n));
+            FACT[n] = f.doubleValue();
+            LOG_FACT[n] = Math.log(FACT[n]);
+        }
+        for (int n = 0; n <= PASCAL_ROWS; n++) {
+            PASCAL[n] = new long[n + 1];
+            PASCAL[n][0] = PASCAL[n][n] = 1;
+            for (int k = 1; k < n; k++) PASCAL[n][k] = PASCAL[n-1][k-1] + PASCAL[n-1][k];
+        }
+    }
+
+    private Combinatorics() {}
+
+    /** n! for n = round(x); overflows to infinity past 170!. */
+    public static double factorial(double x) {
+        long n = Math.round(x);
+        if (n < 0) throw new RuntimeException("Negative factorial");
+        return n <= MAX_FACTORIAL ? FACT[(int) n] : Double.POSITIVE_INFINITY;
+    }
+
+    /** ln(n!), from the table up to 170 and Stirling's series above. */
+    public static double logFactorial(long n) {
+        if (n < 0) throw new RuntimeException("Negative factorial");
+        if (n <= MAX_FACTORIAL) return LOG_FACT[(int) n];
+        double x = n, x2 = x * x;
+        return x * Math.log(x) - x + 0.5 * Math.log(2 * Math.PI * x)
+                + 1 / (12 * x) - 1 / (360 * x * x2) + 1 / (1260 * x2 * x2 * x);
+    }
+
+    /** C(n, r); 0 when r is outside [0, n]. {@code exact} selects BigInteger past the long range. */
+    public static double nCr(int n, int r, boolean exact) {
+        if (r < 0 || n < 0 || r > n) return 0.0;
+        int k = Math.min(r, n - r);
+        if (n <= PASCAL_ROWS) return PASCAL[n][k];
+        long c = binomialLong(n, k);
+        if (c >= 0) return c;
+        if (exact) return binomialExact(n, k).doubleValue();
+        if (n <= MAX_FACTORIAL) return FACT[n] / FACT[k] / FACT[n - k];
+        return Math.exp(logFactorial(n) - logFactorial(k) - logFactorial(n - k));
+    }
+
+    /** P(n, r) = n!/(n-r)!; 0 when r is outside [0, n]. {@code exact} selects BigInteger past the long range. */
+    public static double nPr(int n, int r, boolean exact) {
+        if (r < 0 || n < 0 || r > n) return 0.0;
+        long p = permutationsLong(n, r);
+        if (p >= 0) return p;
+        if (exact) return permutationsExact(n, r).doubleValue();
+        if (n <= MAX_FACTORIAL) return FACT[n] / FACT[n - r];
+        return Math.exp(logFactorial(n) - logFactorial(n - r));
+    }
+
+    // multiplicative C(n, k) with k <= n/2; every partial result is itself a binomial
+    // coefficient, so dividing by gcd first keeps it exact. -1 on overflow
+    static long binomialLong(int n, int k) {
+        long c = 1;
+        for (int i = 1; i <= k; i++) {
+            long m = n - k + i;
+            long g = gcd(c, i), x = c / g, y = m / (i / g);
+            if (x > Long.MAX_VALUE / y) return -1;
+            c = x * y;
+        }
+        return c;
+    }
+
+    // n (n-1) ... (n-r+1), or -1 on overflow
+    static long permutationsLong(int n, int r) {
+        long p = 1;
+        for (int i = 0; i < r; i++) {
+            long f = n - i;
+            if (p > Long.MAX_VALUE / f) return -1;
+            p *= f;
+        }
+        return p;
+    }
+
+    private static long gcd(long a, long b) {
+        while (b != 0) { long t = a % b; a = b; b = t; }
+        return a;
+    }
+
+    public static BigInteger factorialExact(int n) {
+        if (n < 0) throw new RuntimeException("Negative factorial");
+        return memo(0, n, 0, () -> product(2, n));
+    }
+
+    public static BigInteger binomialExact(int n, int r) {
+        if (r < 0 || n < 0 || r > n) return BigInteger.ZERO;
+        int k = Math.min(r, n - r);
+        return memo(1, n, k, () -> product(n - k + 1, n).divide(product(2, k)));
+    }
+
+    public static BigInteger permutationsExact(int n, int r) {
+        if (r < 0 || n < 0 || r > n) return BigInteger.ZERO;
+        return memo(2, n, r, () -> product(n - r + 1, n));
+    }
+
+    // lo * (lo+1) * ... * hi by binary splitting, which keeps the operands balanced
+    private static BigInteger product(long lo, long hi) {
+        if (lo > hi) return BigInteger.ONE;
+        if (hi - lo < 16) {
+            long acc = 1;
+            BigInteger r = BigInteger.ONE;
+            for (long i = lo; i <= hi; i++) {
+                if (acc > Long.MAX_VALUE / i) { r = r.multiply(BigInteger.valueOf(acc)); acc = 1; }
+                acc *= i;
+            }
+            return r.multiply(BigInteger.valueOf(acc));
+        }
+        long mid = (lo + hi) >>> 1;
+        return product(lo, mid).multiply(product(mid + 1, hi));
+    }
+
+    private static BigInteger memo(int kind, int n, int k, java.util.function.Supplier<BigInteger> compute) {
+        Long key = ((long) kind << 62) | ((long) n << 31) | k;
+        synchronized (MEMO) {
+            BigInteger v = MEMO.get(key);
+            if (v != null) return v;
+        }
+        // computed outside the lock; a racing duplicate is harmless
+        BigInteger v = compute.get();
+        if (v.bitLength() <= MEMO_MAX_BITS) {
+            synchronized (MEMO) { MEMO.put(key, v); }
+        }
+        return v;
+    }
+}
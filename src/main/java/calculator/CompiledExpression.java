@@ -0,0 +1,371 @@
+package calculator;
+
+import java.lang.invoke.MethodHandle;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * An expression that has been parsed once and lowered to a flat opcode program.
+ * Numeric literals are already parsed, operators and functions are resolved to
+ * int opcodes and variables are bound to slots, so evaluation does no string work.
+ * <p>
+ * Instances are immutable and may be shared between threads. The operand stack is a
+ * primitive {@code double[]} borrowed from the caller's {@link EvaluationContext} (or the
+ * engine's per-thread context), so steady-state evaluation allocates nothing.
+ * <p>
+ * When the engine has a JIT threshold set, an instance that has been evaluated that
+ * many times is promoted to a {@link MethodHandleCompiler} handle for the current angle
+ * and combinatorics mode, and later evaluations in those modes bypass the interpreter loop.
+ * The count is per instance, so only expressions that are reused (through the parse cache or
+ * {@link CalculatorEngine#compile}) are promoted.
+ */
+public final class CompiledExpression {
+    static final int PUSH_CONST = 0, PUSH_VAR = 1, NEG = 2;
+    static final int ADD = 3, SUB = 4, MUL = 5, DIV = 6, MOD = 7, POW = 8;
+    static final int SIN = 9, COS = 10, TAN = 11, ASIN = 12, ACOS = 13, ATAN = 14;
+    static final int LN = 15, LOG = 16, SQRT = 17, ABS = 18, FACT = 19, NCR = 20, NPR = 21;
+    static final int EXP = 22, MAG = 23, CONJ = 24;
+    /** Complex programs only: pushes {@code constants[operand]} times i. */
+    static final int PUSH_IMAG = 25;
+    /** Emitted by {@link Optimizer}: copy the top of stack into temp {@code operand} / push it back. */
+    static final int STORE_TEMP = 26, LOAD_TEMP = 27;
+    /** Longest program (opcodes plus operands) promoted to the method-handle tier. */
+    static final int MAX_JIT_CODE = 1024;
+
+    private final String source;
+    // identical unless a constant fold depended on the angle mode
+    private final Program radians, degrees;
+    private final String[] slots;
+    private final int stackSize;
+    private final List<String> optimizations;
+    private final CalculatorEngine engine;
+    private final int jitThreshold;
+    // promotion heuristic only, so unsynchronized increments that lose a count are harmless
+    private int evaluations;
+    // one handle per (angle mode, exact combinatorics) pair, indexed by mode()
+    private final AtomicReferenceArray<MethodHandle> jit = new AtomicReferenceArray<>(4);
+
+    private CompiledExpression(String source, Program radians, Program degrees, List<String> optimizations, CalculatorEngine engine) {
+        this.source = source; this.radians = radians; this.degrees = degrees;
+        this.slots = radians.slots; this.optimizations = optimizations; this.engine = engine;
+        this.stackSize = Math.max(radians.stackSize(), degrees.stackSize());
+        this.jitThreshold = engine.getJitThreshold();
+    }
+
+    static CompiledExpression compile(String source, List<Token> rpn, CalculatorEngine engine) {
+        Program p = lower(rpn, false);
+        if (!engine.isOptimizing()) return new CompiledExpression(source, p, p, Collections.emptyList(), engine);
+        Optimizer.Result r = Optimizer.optimize(p, false);
+        Program deg = r.modeDependent ? Optimizer.optimize(p, true).program : r.program;
+        return new CompiledExpression(source, r.program, deg, r.report, engine);
+    }
+
+    /**
+     * An RPN token list lowered to opcodes; shared with {@link ComplexExpression}. Temps written by
+     * {@link #STORE_TEMP} live in the operand stack array just above {@code maxDepth}.
+     */
+    static final class Program {
+        final int[] code; final double[] constants; final String[] slots; final int maxDepth, temps;
+        Program(int[] code, double[] constants, String[] slots, int maxDepth) {
+            this(code, constants, slots, maxDepth, 0);
+        }
+        Program(int[] code, double[] constants, String[] slots, int maxDepth, int temps) {
+            this.code = code; this.constants = constants; this.slots = slots; this.maxDepth = maxDepth; this.temps = temps;
+        }
+        int stackSize() { return maxDepth + temps; }
+    }
+
+    /**
+     * Lowers {@code rpn} to an opcode program, checking operand counts. With {@code complex},
+     * imaginary literals become {@link #PUSH_IMAG} and the name {@code i} is the imaginary unit
+     * rather than a variable; without it, imaginary literals are rejected.
+     */
+    static Program lower(List<Token> rpn, boolean complex) {
+        int[] code = new int[rpn.size() * 2];
+        int pc = 0;
+        double[] constants = new double[rpn.size()];
+        int nConst = 0;
+        List<String> slots = new ArrayList<>();
+        int depth = 0, maxDepth = 0;
+        for (Token token: rpn) {
+            switch (token.kind) {
+                case NUMBER:
+                    code[pc++] = PUSH_CONST; code[pc++] = nConst;
+                    constants[nConst++] = token.value;
+                    depth++;
+                    break;
+                case IMAGINARY:
+                    if (!complex) throw new RuntimeException("Imaginary literal '"+token.text+"' needs complex evaluation at column "+token.column);
+                    code[pc++] = PUSH_IMAG; code[pc++] = nConst;
+                    constants[nConst++] = token.value;
+                    depth++;
+                    break;
+                case VARIABLE: {
+                    if (complex && token.text.equals("i")) {
+                        code[pc++] = PUSH_IMAG; code[pc++] = nConst;
+                        constants[nConst++] = 1;
+                        depth++;
+                        break;
+                    }
+                    int slot = slots.indexOf(token.text);
+                    if (slot < 0) { slot = slots.size(); slots.add(token.text); }
+                    code[pc++] = PUSH_VAR; code[pc++] = slot;
+                    depth++;
+                    break;
+                }
+                case FUNCTION: {
+                    int op = functionOpcode(token.text);
+                    int arity = (op == NCR || op == NPR) ? 2 : 1;
+                    if (depth < arity) throw new RuntimeException("Insufficient args for "+token.text+" at column "+token.column);
+                    code[pc++] = op;
+                    depth -= arity - 1;
+                    break;
+                }
+                case UNARY_MINUS:
+                    if (depth < 1) throw new RuntimeException("Insufficient operand for unary minus at column "+token.column);
+                    code[pc++] = NEG;
+                    break;
+                case OPERATOR:
+                    if (depth < 2) throw new RuntimeException("Insufficient operands for '"+token.text+"' at column "+token.column);
+                    code[pc++] = operatorOpcode(token.op());
+                    depth--;
+                    break;
+                default: throw new RuntimeException("Unknown RPN token "+token);
+            }
+            maxDepth = Math.max(maxDepth, depth);
+        }
+        if (depth != 1) throw new RuntimeException("Invalid expression");
+        return new Program(Arrays.copyOf(code, pc), Arrays.copyOf(constants, nConst), slots.toArray(new String[0]), maxDepth);
+    }
+
+    static int operatorOpcode(char op) {
+        switch (op) {
+            case '+': return ADD; case '-': return SUB; case '*': return MUL;
+            case '/': return DIV; case '%': return MOD; case '^': return POW;
+            default: throw new RuntimeException("Unknown op");
+        }
+    }
+    static int functionOpcode(String fn) {
+        switch (fn) {
+            case "sin": return SIN; case "cos": return COS; case "tan": return TAN;
+            case "asin": return ASIN; case "acos": return ACOS; case "atan": return ATAN;
+            case "ln": return LN; case "log": return LOG; case "sqrt": return SQRT; case "abs": return ABS;
+            case "fact": return FACT; case "nCr": return NCR; case "nPr": return NPR;
+            case "exp": return EXP; case "mag": return MAG; case "conj": return CONJ;
+            default: throw new RuntimeException("Unsupported function "+fn);
+        }
+    }
+
+    public String source() { return source; }
+    /** What the optimizer simplified (folds, removed identities, reused subexpressions); empty if nothing. */
+    public List<String> optimizations() { return optimizations; }
+    private Program program(boolean degrees) { return degrees ? this.degrees : radians; }
+    /** Variable names in slot order; {@link #evaluate(double[])} takes values in this order. */
+    public List<String> variables() { return Collections.unmodifiableList(Arrays.asList(slots)); }
+    /** Slot index of a variable, or -1 if the expression does not reference it. */
+    public int slot(String name) {
+        for (int i=0;i<slots.length;i++) if (slots[i].equals(name)) return i;
+        return -1;
+    }
+
+    /** Evaluates with the engine's current variable values and angle mode. */
+    public double evaluate() {
+        return evaluate(engine.threadContext());
+    }
+
+    /** Evaluates with the context's bindings (falling back to engine variables) and modes. */
+    public double evaluate(EvaluationContext ctx) {
+        double[] values = ctx.values(slots.length);
+        for (int i=0;i<slots.length;i++) values[i] = ctx.getVariable(slots[i]);
+        return evaluate(values, ctx.isDegrees(), ctx.isExactCombinatorics(), ctx.stack(stackSize));
+    }
+
+    /** Evaluates with slot-ordered variable values, see {@link #variables()}, in the engine's modes. */
+    public double evaluate(double[] values) {
+        return evaluate(values, engine.isDegrees(), engine.isExactCombinatorics(), engine.threadContext().stack(stackSize));
+    }
+
+    private double evaluate(double[] values, boolean degrees, boolean exact, double[] stack) {
+        if (!EngineMetrics.isEnabled()) return run(values, degrees, exact, stack);
+        long t0 = System.nanoTime();
+        boolean ok = false;
+        try {
+            double r = run(values, degrees, exact, stack);
+            ok = true;
+            return r;
+        } finally {
+            EngineMetrics.record(EngineMetrics.Op.EVALUATE, t0, !ok, source);
+        }
+    }
+
+    private double run(double[] values, boolean degrees, boolean exact, double[] stack) {
+        if (values.length < slots.length) throw new RuntimeException("Expected "+slots.length+" variable values");
+        MethodHandle h = jit.get(mode(degrees, exact));
+        if (h == null && jitThreshold > 0 && ++evaluations >= jitThreshold) h = jit(degrees, exact);
+        if (h != null) return invoke(h, values);
+        return interpret(program(degrees), values, degrees, exact, stack);
+    }
+
+    private static int mode(boolean degrees, boolean exact) { return (degrees ? 1 : 0) | (exact ? 2 : 0); }
+
+    /** Whether a compiled handle exists for the given angle and combinatorics mode. */
+    public boolean isJitCompiled(boolean degrees, boolean exact) { return jit.get(mode(degrees, exact)) != null; }
+
+    /**
+     * Builds (or returns the already built) method-handle tier for the given modes, or
+     * returns null for programs longer than {@link #MAX_JIT_CODE}: the handle tree nests once
+     * per operation and invoking a very deep one overflows the thread stack, so those stay interpreted.
+     */
+    public MethodHandle jit(boolean degrees, boolean exact) {
+        MethodHandle h = jit.get(mode(degrees, exact));
+        if (h == null) {
+            Program p = program(degrees);
+            if (p.code.length > MAX_JIT_CODE) return null;
+            h = MethodHandleCompiler.compile(p.code, p.constants, degrees, exact);
+            jit.set(mode(degrees, exact), h);
+        }
+        return h;
+    }
+
+    private static double invoke(MethodHandle h, double[] values) {
+        try {
+            return (double) h.invokeExact(values);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new RuntimeException(t);
+        }
+    }
+
+    static double interpret(Program p, double[] values, boolean degrees, boolean exact, double[] st) {
+        int sp = 0;
+        int[] code = p.code;
+        double[] constants = p.constants;
+        int temps = p.maxDepth;
+        for (int pc = 0; pc < code.length; pc++) {
+            switch (code[pc]) {
+                case PUSH_CONST: st[sp++] = constants[code[++pc]]; break;
+                case PUSH_VAR: st[sp++] = values[code[++pc]]; break;
+                case NEG: st[sp-1] = -st[sp-1]; break;
+                case STORE_TEMP: st[temps + code[++pc]] = st[sp-1]; break;
+                case LOAD_TEMP: st[sp++] = st[temps + code[++pc]]; break;
+                case ADD: sp--; st[sp-1] = st[sp-1] + st[sp]; break;
+                case SUB: sp--; st[sp-1] = st[sp-1] - st[sp]; break;
+                case MUL: sp--; st[sp-1] = st[sp-1] * st[sp]; break;
+                case DIV: sp--; if (st[sp]==0) throw new RuntimeException("Division by zero"); st[sp-1] = st[sp-1] / st[sp]; break;
+                case MOD: sp--; st[sp-1] = st[sp-1] % st[sp]; break;
+                case POW: sp--; st[sp-1] = Math.pow(st[sp-1], st[sp]); break;
+                case SIN: st[sp-1] = Math.sin(degrees ? Math.toRadians(st[sp-1]) : st[sp-1]); break;
+                case COS: st[sp-1] = Math.cos(degrees ? Math.toRadians(st[sp-1]) : st[sp-1]); break;
+                case TAN: st[sp-1] = Math.tan(degrees ? Math.toRadians(st[sp-1]) : st[sp-1]); break;
+                case ASIN: st[sp-1] = degrees ? Math.toDegrees(Math.asin(st[sp-1])) : Math.asin(st[sp-1]); break;
+                case ACOS: st[sp-1] = degrees ? Math.toDegrees(Math.acos(st[sp-1])) : Math.acos(st[sp-1]); break;
+                case ATAN: st[sp-1] = degrees ? Math.toDegrees(Math.atan(st[sp-1])) : Math.atan(st[sp-1]); break;
+                case LN: st[sp-1] = Math.log(st[sp-1]); break;
+                case LOG: st[sp-1] = Math.log10(st[sp-1]); break;
+                case SQRT: st[sp-1] = Math.sqrt(st[sp-1]); break;
+                case ABS: st[sp-1] = Math.abs(st[sp-1]); break;
+                case EXP: st[sp-1] = Math.exp(st[sp-1]); break;
+                case MAG: st[sp-1] = Math.abs(st[sp-1]); break;
+                case CONJ: break;
+                case FACT: st[sp-1] = CalculatorEngine.factorial(st[sp-1]); break;
+                case NCR: sp--; st[sp-1] = CalculatorEngine.nCr((int)Math.round(st[sp-1]), (int)Math.round(st[sp]), exact); break;
+                case NPR: sp--; st[sp-1] = CalculatorEngine.nPr((int)Math.round(st[sp-1]), (int)Math.round(st[sp]), exact); break;
+                default: throw new RuntimeException("Unknown opcode "+code[pc]);
+            }
+        }
+        return st[0];
+    }
+
+    /** Rows processed per block by {@link #evaluateBatch}; sized so the block stack stays in L1/L2. */
+    static final int BATCH_BLOCK = 1024;
+
+    /**
+     * Evaluates the program column-wise for rows {@code [0, out.length)}. {@code columns[slot]}
+     * supplies per-row values for a slot; where it is null, {@code scalars[slot]} is used for every
+     * row. Each opcode runs as a tight loop over a block of rows, which C2 auto-vectorizes for
+     * the arithmetic operators. Safe to call concurrently; the block stack is allocated per call.
+     */
+    public void evaluateBatch(double[][] columns, double[] scalars, double[] out) {
+        evaluateBatch(columns, scalars, out, engine.isDegrees());
+    }
+
+    /** As above with the angle mode given explicitly; exact combinatorics follows the engine. */
+    public void evaluateBatch(double[][] columns, double[] scalars, double[] out, boolean degrees) {
+        boolean exact = engine.isExactCombinatorics();
+        if (columns.length < slots.length || scalars.length < slots.length) throw new RuntimeException("Expected "+slots.length+" variable columns");
+        for (int s=0;s<slots.length;s++) {
+            if (columns[s] != null && columns[s].length < out.length) throw new RuntimeException("Column "+slots[s]+" is shorter than the output");
+        }
+        int rows = out.length;
+        Program p = program(degrees);
+        int[] code = p.code;
+        double[] constants = p.constants;
+        double[][] st = new double[p.stackSize()][Math.min(BATCH_BLOCK, rows)];
+        for (int base = 0; base < rows; base += BATCH_BLOCK) {
+            int len = Math.min(BATCH_BLOCK, rows - base);
+            int sp = 0;
+            for (int pc = 0; pc < code.length; pc++) {
+                int op = code[pc];
+                switch (op) {
+                    case PUSH_CONST: Arrays.fill(st[sp++], 0, len, constants[code[++pc]]); break;
+                    case PUSH_VAR: {
+                        int slot = code[++pc];
+                        if (columns[slot] != null) System.arraycopy(columns[slot], base, st[sp], 0, len);
+                        else Arrays.fill(st[sp], 0, len, scalars[slot]);
+                        sp++;
+                        break;
+                    }
+                    case STORE_TEMP: System.arraycopy(st[sp-1], 0, st[p.maxDepth + code[++pc]], 0, len); break;
+                    case LOAD_TEMP: System.arraycopy(st[p.maxDepth + code[++pc]], 0, st[sp++], 0, len); break;
+                    case ADD: case SUB: case MUL: case DIV: case MOD: case POW: case NCR: case NPR:
+                        sp--;
+                        binaryBlock(op, st[sp-1], st[sp], len, exact);
+                        break;
+                    default: unaryBlock(op, st[sp-1], len, degrees);
+                }
+            }
+            System.arraycopy(st[0], 0, out, base, len);
+        }
+    }
+
+    private static void binaryBlock(int op, double[] x, double[] y, int len, boolean exact) {
+        switch (op) {
+            case ADD: for (int i=0;i<len;i++) x[i] = x[i] + y[i]; break;
+            case SUB: for (int i=0;i<len;i++) x[i] = x[i] - y[i]; break;
+            case MUL: for (int i=0;i<len;i++) x[i] = x[i] * y[i]; break;
+            case DIV:
+                // checked up front so the divide loop itself stays branch-free
+                for (int i=0;i<len;i++) if (y[i]==0) throw new RuntimeException("Division by zero");
+                for (int i=0;i<len;i++) x[i] = x[i] / y[i];
+                break;
+            case MOD: for (int i=0;i<len;i++) x[i] = x[i] % y[i]; break;
+            case POW: for (int i=0;i<len;i++) x[i] = Math.pow(x[i], y[i]); break;
+            case NCR: for (int i=0;i<len;i++) x[i] = CalculatorEngine.nCr((int)Math.round(x[i]), (int)Math.round(y[i]), exact); break;
+            case NPR: for (int i=0;i<len;i++) x[i] = CalculatorEngine.nPr((int)Math.round(x[i]), (int)Math.round(y[i]), exact); break;
+            default: throw new RuntimeException("Unknown opcode "+op);
+        }
+    }
+
+    private static void unaryBlock(int op, double[] x, int len, boolean degrees) {
+        switch (op) {
+            case NEG: for (int i=0;i<len;i++) x[i] = -x[i]; break;
+            case SIN: for (int i=0;i<len;i++) x[i] = Math.sin(degrees ? Math.toRadians(x[i]) : x[i]); break;
+            case COS: for (int i=0;i<len;i++) x[i] = Math.cos(degrees ? Math.toRadians(x[i]) : x[i]); break;
+            case TAN: for (int i=0;i<len;i++) x[i] = Math.tan(degrees ? Math.toRadians(x[i]) : x[i]); break;
+            case ASIN: for (int i=0;i<len;i++) x[i] = degrees ? Math.toDegrees(Math.asin(x[i])) : Math.asin(x[i]); break;
+            case ACOS: for (int i=0;i<len;i++) x[i] = degrees ? Math.toDegrees(Math.acos(x[i])) : Math.acos(x[i]); break;
+            case ATAN: for (int i=0;i<len;i++) x[i] = degrees ? Math.toDegrees(Math.atan(x[i])) : Math.atan(x[i]); break;
+            case LN: for (int i=0;i<len;i++) x[i] = Math.log(x[i]); break;
+            case LOG: for (int i=0;i<len;i++) x[i] = Math.log10(x[i]); break;
+            case SQRT: for (int i=0;i<len;i++) x[i] = Math.sqrt(x[i]); break;
+            case ABS: case MAG: for (int i=0;i<len;i++) x[i] = Math.abs(x[i]); break;
+            case EXP: for (int i=0;i<len;i++) x[i] = Math.exp(x[i]); break;
+            case CONJ: break;
+            case FACT: for (int i=0;i<len;i++) x[i] = CalculatorEngine.factorial(x[i]); break;
+            default: throw new RuntimeException("Unknown opcode "+op);
+        }
+    }
+
+    @Override public String toString() { return source; }
+}
@@ -0,0 +1,228 @@
+package calculator;
+
+import java.util.*;
+
+/**
+ * A {@link CompiledExpression} program evaluated over the complex numbers. The opcode
+ * program is the same; values live in structure-of-arrays form (one {@code double[]} for real
+ * parts, one for imaginary parts) and the arithmetic runs through a reused
+ * {@link MutableComplex}, so evaluation allocates nothing except a returned
+ * {@link ComplexNumber}.
+ * <p>
+ * {@code i} and literals such as {@code 2.5i} are imaginary. Every function extends to the
+ * complex plane on its principal branch ({@code mag} and {@code abs} give the modulus,
+ * {@code conj} the conjugate); {@code %}, {@code fact}, {@code nCr} and {@code nPr} need real
+ * operands. In degree mode trigonometric arguments and inverse results are converted
+ * componentwise. Purely real inputs give the same results as the real engine.
+ */
+public final class ComplexExpression {
+    private final String source;
+    private final int[] code;
+    private final double[] constants;
+    private final String[] slots;
+    private final int maxDepth;
+    private final CalculatorEngine engine;
+
+    private ComplexExpression(String source, CompiledExpression.Program p, CalculatorEngine engine) {
+        this.source = source; this.code = p.code; this.constants = p.constants;
+        this.slots = p.slots; this.maxDepth = p.maxDepth; this.engine = engine;
+    }
+
+    static ComplexExpression compile(String source, List<Token> rpn, CalculatorEngine engine) {
+        return new ComplexExpression(source, CompiledExpression.lower(rpn, true), engine);
+    }
+
+    public String source() { return source; }
+    /** Variable names in slot order, as taken by {@link #evaluate(double[], double[], MutableComplex)}. */
+    public List<String> variables() { return Collections.unmodifiableList(Arrays.asList(slots)); }
+
+    /** Evaluates with the engine's (real) variable values and angle mode. */
+    public ComplexNumber evaluate() {
+        return evaluate(engine.threadContext());
+    }
+
+    /** Evaluates with the context's (real) bindings and modes. */
+    public ComplexNumber evaluate(EvaluationContext ctx) {
+        double[] re = ctx.values(slots.length), im = ctx.imValues(slots.length);
+        for (int s=0;s<slots.length;s++) { re[s] = ctx.getVariable(slots[s]); im[s] = 0; }
+        MutableComplex out = ctx.scratch();
+        run(re, im, ctx.isDegrees(), ctx.isExactCombinatorics(), ctx.stack(maxDepth), ctx.imStack(maxDepth), out);
+        return out.toComplexNumber();
+    }
+
+    /**
+     * Allocation-free form: slot-ordered variable values split into real and imaginary parts
+     * ({@code im} may be null for real inputs); the result is written to {@code out}.
+     */
+    public MutableComplex evaluate(double[] re, double[] im, MutableComplex out) {
+        if (re.length < slots.length || (im != null && im.length < slots.length)) throw new RuntimeException("Expected "+slots.length+" variable values");
+        EvaluationContext ctx = engine.threadContext();
+        double[] vi = im;
+        if (vi == null) { vi = ctx.imValues(slots.length); Arrays.fill(vi, 0, slots.length, 0); }
+        return run(re, vi, engine.isDegrees(), engine.isExactCombinatorics(), ctx.stack(maxDepth), ctx.imStack(maxDepth), out);
+    }
+
+    private MutableComplex run(double[] vr, double[] vi, boolean degrees, boolean exact, double[] sr, double[] si, MutableComplex t) {
+        int sp = 0;
+        int[] code = this.code;
+        for (int pc = 0; pc < code.length; pc++) {
+            int op = code[pc];
+            switch (op) {
+                case CompiledExpression.PUSH_CONST: sr[sp] = constants[code[++pc]]; si[sp++] = 0; break;
+                case CompiledExpression.PUSH_IMAG: sr[sp] = 0; si[sp++] = constants[code[++pc]]; break;
+                case CompiledExpression.PUSH_VAR: { int s = code[++pc]; sr[sp] = vr[s]; si[sp++] = vi[s]; break; }
+                case CompiledExpression.ADD: case CompiledExpression.SUB: case CompiledExpression.MUL:
+                case CompiledExpression.DIV: case CompiledExpression.MOD: case CompiledExpression.POW:
+                case CompiledExpression.NCR: case CompiledExpression.NPR:
+                    sp--;
+                    binary(op, t.set(sr[sp-1], si[sp-1]), sr[sp], si[sp], exact);
+                    sr[sp-1] = t.re; si[sp-1] = t.im;
+                    break;
+                default:
+                    unary(op, t.set(sr[sp-1], si[sp-1]), degrees);
+                    sr[sp-1] = t.re; si[sp-1] = t.im;
+            }
+        }
+        return t.set(sr[0], si[0]);
+    }
+
+    // x := x op y
+    private static void binary(int op, MutableComplex x, double yr, double yi, boolean exact) {
+        switch (op) {
+            case CompiledExpression.ADD: x.add(yr, yi); break;
+            case CompiledExpression.SUB: x.sub(yr, yi); break;
+            case CompiledExpression.MUL: x.mul(yr, yi); break;
+            case CompiledExpression.DIV:
+                if (yr == 0 && yi == 0) throw new RuntimeException("Division by zero");
+                x.div(yr, yi);
+                break;
+            case CompiledExpression.POW: x.pow(yr, yi); break;
+            case CompiledExpression.MOD: requireReal(x.im, yi, "%"); x.set(x.re % yr, 0); break;
+            case CompiledExpression.NCR: requireReal(x.im, yi, "nCr"); x.set(CalculatorEngine.nCr((int)Math.round(x.re), (int)Math.round(yr), exact), 0); break;
+            case CompiledExpression.NPR: requireReal(x.im, yi, "nPr"); x.set(CalculatorEngine.nPr((int)Math.round(x.re), (int)Math.round(yr), exact), 0); break;
+            default: throw new RuntimeException("Unknown opcode "+op);
+        }
+    }
+
+    private static void unary(int op, MutableComplex x, boolean degrees) {
+        switch (op) {
+            case CompiledExpression.NEG: x.neg(); break;
+            case CompiledExpression.SIN: toRadians(x, degrees).sin(); break;
+            case CompiledExpression.COS: toRadians(x, degrees).cos(); break;
+            case CompiledExpression.TAN: toRadians(x, degrees).tan(); break;
+            case CompiledExpression.ASIN: toDegrees(x.asin(), degrees); break;
+            case CompiledExpression.ACOS: toDegrees(x.acos(), degrees); break;
+            case CompiledExpression.ATAN: toDegrees(x.atan(), degrees); break;
+            case CompiledExpression.LN: x.ln(); break;
+            case CompiledExpression.LOG: x.log10(); break;
+            case CompiledExpression.SQRT: x.sqrt(); break;
+            case CompiledExpression.EXP: x.exp(); break;
+            case CompiledExpression.ABS: case CompiledExpression.MAG: x.set(x.mag(), 0); break;
+            case CompiledExpression.CONJ: x.conj(); break;
+            case CompiledExpression.FACT: requireReal(x.im, 0, "fact"); x.set(CalculatorEngine.factorial(x.re), 0); break;
+            default: throw new RuntimeException("Unknown opcode "+op);
+        }
+    }
+
+    private static MutableComplex toRadians(MutableComplex x, boolean degrees) {
+        return degrees ? x.set(Math.toRadians(x.re), Math.toRadians(x.im)) : x;
+    }
+    private static void toDegrees(MutableComplex x, boolean degrees) {
+        if (degrees) x.set(Math.toDegrees(x.re), Math.toDegrees(x.im));
+    }
+    private static void requireReal(double xi, double yi, String op) {
+        if (xi != 0 || yi != 0) throw new RuntimeException(op+" needs real operands");
+    }
+
+    public void evaluateBatch(double[][] re, double[][] im, double[] outRe, double[] outIm) {
+        evaluateBatch(re, im, outRe, outIm, engine.isDegrees());
+    }
+
+    /**
+     * Evaluates rows {@code [0, outRe.length)} column-wise. {@code re[slot]} holds the real parts
+     * of a variable's per-row values; {@code im} (or any {@code im[slot]}) may be null for real
+     * inputs. Add, subtract and multiply run as straight loops over each block; other operations
+     * go element by element through one {@link MutableComplex}. Exact combinatorics follows the
+     * engine. Safe to call concurrently.
+     */
+    public void evaluateBatch(double[][] re, double[][] im, double[] outRe, double[] outIm, boolean degrees) {
+        boolean exact = engine.isExactCombinatorics();
+        int rows = outRe.length;
+        if (outIm.length < rows) throw new RuntimeException("Output arrays differ in length");
+        if (re.length < slots.length) throw new RuntimeException("Expected "+slots.length+" variable columns");
+        for (int s=0;s<slots.length;s++) {
+            if (re[s] == null || re[s].length < rows) throw new RuntimeException("Column "+slots[s]+" is missing or shorter than the output");
+            if (im != null && im[s] != null && im[s].length < rows) throw new RuntimeException("Column "+slots[s]+" is shorter than the output");
+        }
+        int block = Math.min(CompiledExpression.BATCH_BLOCK, rows);
+        double[][] sr = new double[maxDepth][block], si = new double[maxDepth][block];
+        MutableComplex t = new MutableComplex();
+        for (int base = 0; base < rows; base += CompiledExpression.BATCH_BLOCK) {
+            int len = Math.min(CompiledExpression.BATCH_BLOCK, rows - base);
+            int sp = 0;
+            for (int pc = 0; pc < code.length; pc++) {
+                int op = code[pc];
+                switch (op) {
+                    case CompiledExpression.PUSH_CONST:
+                        Arrays.fill(sr[sp], 0, len, constants[code[++pc]]);
+                        Arrays.fill(si[sp++], 0, len, 0);
+                        break;
+                    case CompiledExpression.PUSH_IMAG:
+                        Arrays.fill(sr[sp], 0, len, 0);
+                        Arrays.fill(si[sp++], 0, len, constants[code[++pc]]);
+                        break;
+                    case CompiledExpression.PUSH_VAR: {
+                        int s = code[++pc];
+                        System.arraycopy(re[s], base, sr[sp], 0, len);
+                        if (im != null && im[s] != null) System.arraycopy(im[s], base, si[sp], 0, len);
+                        else Arrays.fill(si[sp], 0, len, 0);
+                        sp++;
+                        break;
+                    }
+                    case CompiledExpression.ADD: case CompiledExpression.SUB: case CompiledExpression.MUL:
+                    case CompiledExpression.DIV: case CompiledExpression.MOD: case CompiledExpression.POW:
+                    case CompiledExpression.NCR: case CompiledExpression.NPR:
+                        sp--;
+                        binaryBlock(op, sr[sp-1], si[sp-1], sr[sp], si[sp], len, t, exact);
+                        break;
+                    default: {
+                        double[] xr = sr[sp-1], xi = si[sp-1];
+                        if (op == CompiledExpression.NEG) {
+                            for (int k=0;k<len;k++) { xr[k] = -xr[k]; xi[k] = 0.0 - xi[k]; }
+                        } else if (op == CompiledExpression.CONJ) {
+                            for (int k=0;k<len;k++) xi[k] = -xi[k];
+                        } else {
+                            for (int k=0;k<len;k++) {
+                                unary(op, t.set(xr[k], xi[k]), degrees);
+                                xr[k] = t.re; xi[k] = t.im;
+                            }
+                        }
+                    }
+                }
+            }
+            System.arraycopy(sr[0], 0, outRe, base, len);
+            System.arraycopy(si[0], 0, outIm, base, len);
+        }
+    }
+
+    private static void binaryBlock(int op, double[] xr, double[] xi, double[] yr, double[] yi, int len, MutableComplex t, boolean exact) {
+        switch (op) {
+            case CompiledExpression.ADD: for (int k=0;k<len;k++) { xr[k] += yr[k]; xi[k] += yi[k]; } break;
+            case CompiledExpression.SUB: for (int k=0;k<len;k++) { xr[k] -= yr[k]; xi[k] -= yi[k]; } break;
+            case CompiledExpression.MUL:
+                for (int k=0;k<len;k++) {
+                    double a = xr[k], b = xi[k];
+                    xr[k] = a*yr[k] - b*yi[k];
+                    xi[k] = a*yi[k] + b*yr[k];
+                }
+                break;
+            default:
+                for (int k=0;k<len;k++) {
+                    binary(op, t.set(xr[k], xi[k]), yr[k], yi[k], exact);
+                    xr[k] = t.re; xi[k] = t.im;
+                }
+        }
+    }
+
+    @Override public String toString() { return source; }
+}
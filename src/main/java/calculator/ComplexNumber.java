@@ -1,3 +1,5 @@
+package calculator;
+
 public class ComplexNumber {
     public final double re, im;
     public ComplexNumber(double r, double i) { re = r; im = i; }
@@ -0,0 +1,162 @@
+package calculator;
+
+import jdk.jfr.*;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Opt-in instrumentation for the engine hot paths: a call counter, an error counter and a
+ * {@link LatencyHistogram} per {@link Op}, published as JMX MXBeans under
+ * {@code calculator:type=EngineMetrics} and, while a Flight Recorder recording has
+ * {@code calculator.Operation} enabled, as one JFR event per call.
+ * <p>
+ * Off by default; start the JVM with {@code -Dcalculator.metrics=true} or call
+ * {@link #setEnabled}. When off, an instrumented call costs one volatile read and a
+ * branch and allocates nothing ({@code java calculator.Benchmark metrics} measures it).
+ */
+public final class EngineMetrics {
+    public enum Op {
+        /** Tokenizing, shunting-yard and opcode compilation; parse-cache hits skip it. */
+        PARSE,
+        /** Running a compiled program (interpreter or method-handle tier). */
+        EVALUATE,
+        HISTORY_APPEND, HISTORY_READ,
+        MATRIX_ADD, MATRIX_MULTIPLY,
+        /** LU factorization, which also backs determinant(). */
+        MATRIX_LU,
+        /** Includes its own factorization. */
+        MATRIX_INVERSE,
+        MATRIX_SOLVE
+    }
+
+    private static volatile boolean enabled = Boolean.getBoolean("calculator.metrics");
+    private static final Stats[] STATS = new Stats[Op.values().length];
+    private static boolean registered;
+
+    static {
+        for (Op op: Op.values()) STATS[op.ordinal()] = new Stats(op);
+        if (enabled) registerMBeans();
+    }
+
+    private EngineMetrics() {}
+
+    public static boolean isEnabled() { return enabled; }
+
+    /** Turns instrumentation on or off; turning it on registers the MBeans if needed. */
+    public static void setEnabled(boolean on) {
+        if (on) registerMBeans();
+        enabled = on;
+    }
+
+    public static Stats stats(Op op) { return STATS[op.ordinal()]; }
+
+    public static void reset() {
+        for (Stats s: STATS) s.reset();
+    }
+
+    /**
+     * Records one call of {@code op} that started at {@code startNanos} ({@link System#nanoTime}).
+     * {@code detail} (the expression, or matrix dimensions) only goes into the JFR event.
+     */
+    static void record(Op op, long startNanos, boolean failed, String detail) {
+        long elapsed = System.nanoTime() - startNanos;
+        STATS[op.ordinal()].record(elapsed, failed);
+        OperationEvent e = new OperationEvent();
+        if (e.isEnabled()) {
+            e.operation = op.name();
+            e.detail = detail;
+            e.failed = failed;
+            e.elapsed = elapsed;
+            e.commit();
+        }
+    }
+
+    /** Registers one MXBean per operation plus a control bean; safe to call repeatedly. */
+    public static synchronized void registerMBeans() {
+        if (registered) return;
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            server.registerMBean(new StandardMBean(new Control(), ControlMXBean.class, true),
+                    new ObjectName("calculator:type=EngineMetrics,name=Control"));
+            for (Stats s: STATS) {
+                server.registerMBean(new StandardMBean(s, StatsMXBean.class, true),
+                        new ObjectName("calculator:type=EngineMetrics,name=" + s.op));
+            }
+            registered = true;
+        } catch (Exception e) {
+            throw new RuntimeException("Cannot register engine MBeans", e);
+        }
+    }
+
+    /** Summary of every operation that has been called, one line each. */
+    public static String summary() {
+        StringBuilder sb = new StringBuilder();
+        for (Stats s: STATS) {
+            if (s.count() > 0) sb.append(String.format("%-16s %s errors=%d%n", s.op, s.latency.summary(), s.errors()));
+        }
+        return sb.toString();
+    }
+
+    public interface StatsMXBean {
+        long getCount();
+        long getErrors();
+        double getMeanMicros();
+        double getP50Micros();
+        double getP99Micros();
+        double getMaxMicros();
+        void reset();
+    }
+
+    public interface ControlMXBean {
+        boolean isEnabled();
+        void setEnabled(boolean on);
+        void reset();
+    }
+
+    public static final class Stats implements StatsMXBean {
+        private final Op op;
+        private final LongAdder errors = new LongAdder();
+        private final LatencyHistogram latency = new LatencyHistogram();
+
+        private Stats(Op op) { this.op = op; }
+
+        void record(long nanos, boolean failed) {
+            latency.record(nanos);
+            if (failed) errors.increment();
+        }
+
+        public long count() { return latency.count(); }
+        public long errors() { return errors.sum(); }
+        public LatencyHistogram latency() { return latency; }
+
+        @Override public long getCount() { return count(); }
+        @Override public long getErrors() { return errors(); }
+        @Override public double getMeanMicros() { return latency.mean() / 1e3; }
+        @Override public double getP50Micros() { return latency.percentile(50) / 1e3; }
+        @Override public double getP99Micros() { return latency.percentile(99) / 1e3; }
+        @Override public double getMaxMicros() { return latency.max() / 1e3; }
+        @Override public void reset() { latency.reset(); errors.reset(); }
+    }
+
+    private static final class Control implements ControlMXBean {
+        @Override public boolean isEnabled() { return enabled; }
+        @Override public void setEnabled(boolean on) { EngineMetrics.setEnabled(on); }
+        @Override public void reset() { EngineMetrics.reset(); }
+    }
+
+    @Name("calculator.Operation")
+    @Label("Calculator Operation")
+    @Category("Calculator")
+    @Description("One instrumented engine, history or matrix call")
+    @StackTrace(false)
+    static final class OperationEvent extends Event {
+        @Label("Operation") String operation;
+        @Label("Detail") String detail;
+        @Label("Failed") boolean failed;
+        @Label("Elapsed") @Timespan(Timespan.NANOSECONDS) long elapsed;
+    }
+}
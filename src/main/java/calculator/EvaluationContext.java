@@ -0,0 +1,61 @@
+package calculator;
+
+import java.util.*;
+
+/**
+ * Per-evaluation scope for a shared {@link CalculatorEngine}: local variable bindings,
+ * optional angle-mode and exact-combinatorics overrides and the scratch buffers the interpreter reuses.
+ * Lookups fall back to the engine's variables (including memory {@code M}).
+ * A context is confined to one thread at a time; the engine and compiled
+ * expressions it is used with may be shared freely.
+ */
+public final class EvaluationContext {
+    private final CalculatorEngine engine;
+    private final Map<String, Double> bindings = new HashMap<>();
+    private Boolean degrees, exactCombinatorics;
+    private double[] values = new double[8];
+    private double[] stack = new double[16];
+    private double[] imValues = new double[8], imStack = new double[16];
+    private final MutableComplex scratch = new MutableComplex();
+
+    EvaluationContext(CalculatorEngine engine) {
+        this.engine = engine;
+    }
+
+    public void setVariable(String name, double v) { bindings.put(name, v); }
+    public double getVariable(String name) {
+        Double v = bindings.get(name);
+        return v != null ? v : engine.getVariable(name);
+    }
+    public void clearVariables() { bindings.clear(); }
+
+    /** Overrides the engine's angle mode for evaluations in this context. */
+    public void setDegrees(boolean d) { degrees = d; }
+    /** Drops the override so the engine's angle mode applies again. */
+    public void clearDegrees() { degrees = null; }
+    public boolean isDegrees() { return degrees != null ? degrees : engine.isDegrees(); }
+
+    /** Overrides the engine's {@link CalculatorEngine#setExactCombinatorics exact combinatorics} setting. */
+    public void setExactCombinatorics(boolean on) { exactCombinatorics = on; }
+    public void clearExactCombinatorics() { exactCombinatorics = null; }
+    public boolean isExactCombinatorics() { return exactCombinatorics != null ? exactCombinatorics : engine.isExactCombinatorics(); }
+
+    double[] values(int n) {
+        if (values.length < n) values = new double[Math.max(n, values.length * 2)];
+        return values;
+    }
+    double[] stack(int n) {
+        if (stack.length < n) stack = new double[Math.max(n, stack.length * 2)];
+        return stack;
+    }
+    // imaginary halves for ComplexExpression, which uses values()/stack() for the real parts
+    double[] imValues(int n) {
+        if (imValues.length < n) imValues = new double[Math.max(n, imValues.length * 2)];
+        return imValues;
+    }
+    double[] imStack(int n) {
+        if (imStack.length < n) imStack = new double[Math.max(n, imStack.length * 2)];
+        return imStack;
+    }
+    MutableComplex scratch() { return scratch; }
+}
@@ -0,0 +1,293 @@
+package calculator;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Local HTTP front end for a shared {@link CalculatorEngine}, one thread per request
+ * (virtual threads where the runtime has them). Every request gets its own
+ * {@link EvaluationContext}, so bindings and angle mode never leak between requests.
+ * <pre>
+ * GET  /eval?expr=a*x%2B1&amp;x=2&amp;a=3[&amp;degrees=true]    -> text/plain result
+ * POST /eval  text/plain, one expression per line          -> one result per line
+ * POST /eval  application/json
+ *   {"expr": "a*x+1", "variables": {"x": 2}, "degrees": false}           -> {"value": ...}
+ *   {"expressions": ["x+1", "x*2"], "variables": {"x": 2}}               -> {"results": [...]}
+ *   [ {"expr": ...}, {"expressions": ...}, ... ]                          -> [ ... ]
+ * </pre>
+ * Batches are the cheap path for small payloads: a batch shares one context and compiles each
+ * distinct expression once, and a failing item reports {@code {"error": "..."}} (or
+ * {@code ERROR <line>: <message>} in text mode) without failing its neighbours.
+ * Connections are HTTP/1.1 keep-alive, so clients may also pipeline single requests.
+ * <pre>
+ * java calculator.EvaluationServer [--port N] [--degrees] [--cache N]
+ * </pre>
+ */
+public class EvaluationServer implements AutoCloseable {
+    /** Request bodies larger than this are rejected with 413. */
+    static final int MAX_BODY_BYTES = 4 << 20;
+    // reported, as in BatchCli, when parsing or evaluating overflows the stack; the request
+    // thread survives it and a 422 beats a dropped connection
+    static final String TOO_DEEP = "Expression too deeply nested";
+
+    static {
+        // responses go out as two writes (headers, body); with Nagle on, small responses stall
+        // ~40ms on the client's delayed ACK. Read once when the first server is created.
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    private final CalculatorEngine engine;
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    public EvaluationServer(CalculatorEngine engine, int port) throws IOException {
+        this.engine = engine;
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        this.executor = newPerRequestExecutor();
+        server.setExecutor(executor);
+        server.createContext("/eval", this::handle);
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = 8080, cacheSize = 10_000;
+        boolean degrees = false;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--port" -> port = Integer.parseInt(args[++i]);
+                case "--degrees" -> degrees = true;
+                case "--cache" -> cacheSize = Integer.parseInt(args[++i]);
+                default -> {
+                    System.err.println("Usage: java calculator.EvaluationServer [--port N] [--degrees] [--cache N]");
+                    System.exit(2);
+                }
+            }
+        }
+        CalculatorEngine engine = new CalculatorEngine();
+        engine.setDegrees(degrees);
+        if (cacheSize > 0) engine.enableParseCache(cacheSize, ParseCache.Policy.TINY_LFU);
+        EvaluationServer server = new EvaluationServer(engine, port);
+        Runtime.getRuntime().addShutdownHook(new Thread(server::close));
+        server.start();
+        System.err.println("Listening on http://127.0.0.1:" + server.port() + "/eval");
+    }
+
+    /**
+     * Virtual thread per task when the runtime provides it (Java 21+); otherwise a cached pool,
+     * which on older runtimes is the closest equivalent for short, blocking request handlers.
+     */
+    static ExecutorService newPerRequestExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(r -> {
+                Thread t = new Thread(r, "eval-request");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+    }
+
+    public void start() { server.start(); }
+    public int port() { return server.getAddress().getPort(); }
+
+    @Override public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange ex) throws IOException {
+        try (ex) {
+            String method = ex.getRequestMethod();
+            if (method.equals("GET")) {
+                handleQuery(ex);
+            } else if (method.equals("POST")) {
+                byte[] body = readBody(ex.getRequestBody());
+                if (body == null) {
+                    send(ex, 413, "text/plain", "Request body too large");
+                    return;
+                }
+                String text = new String(body, StandardCharsets.UTF_8);
+                String type = ex.getRequestHeaders().getFirst("Content-Type");
+                if ((type != null && type.startsWith("application/json")) || startsWithJson(text)) {
+                    handleJson(ex, text);
+                } else {
+                    send(ex, 200, "text/plain", evaluateLines(text));
+                }
+            } else {
+                ex.getResponseHeaders().set("Allow", "GET, POST");
+                send(ex, 405, "text/plain", "Method not allowed");
+            }
+        } catch (RuntimeException e) {
+            send(ex, 500, "text/plain", String.valueOf(e.getMessage()));
+        } catch (StackOverflowError e) {
+            send(ex, 422, "text/plain", TOO_DEEP);
+        }
+    }
+
+    private void handleQuery(HttpExchange ex) throws IOException {
+        EvaluationContext ctx = engine.newContext();
+        String expr = null;
+        String query = ex.getRequestURI().getRawQuery();
+        try {
+            if (query != null) {
+                for (String pair: query.split("&")) {
+                    int eq = pair.indexOf('=');
+                    if (eq < 0) continue;
+                    String key = decode(pair.substring(0, eq)), value = decode(pair.substring(eq + 1));
+                    if (key.equals("expr")) expr = value;
+                    else if (key.equals("degrees")) ctx.setDegrees(Boolean.parseBoolean(value));
+                    else ctx.setVariable(key, Double.parseDouble(value));
+                }
+            }
+            if (expr == null) {
+                send(ex, 400, "text/plain", "Missing expr parameter");
+                return;
+            }
+            send(ex, 200, "text/plain", CalculatorEngine.format(engine.compile(expr).evaluate(ctx)));
+        } catch (RuntimeException e) {
+            send(ex, 400, "text/plain", String.valueOf(e.getMessage()));
+        } catch (StackOverflowError e) {
+            send(ex, 422, "text/plain", TOO_DEEP);
+        }
+    }
+
+    private void handleJson(HttpExchange ex, String text) throws IOException {
+        Object request;
+        try {
+            request = MiniJson.parse(text);
+        } catch (RuntimeException e) {
+            send(ex, 400, "application/json", "{\"error\":" + MiniJson.quote(e.getMessage()) + "}");
+            return;
+        } catch (StackOverflowError e) {
+            send(ex, 400, "application/json", "{\"error\":\"JSON nested too deeply\"}");
+            return;
+        }
+        StringBuilder out = new StringBuilder();
+        if (request instanceof List<?> list) {
+            out.append('[');
+            for (int i = 0; i < list.size(); i++) {
+                if (i > 0) out.append(',');
+                evaluateJson(list.get(i), out);
+            }
+            out.append(']');
+        } else {
+            evaluateJson(request, out);
+        }
+        send(ex, 200, "application/json", out.toString());
+    }
+
+    /** One JSON request object; errors are reported in place so a batch never fails as a whole. */
+    void evaluateJson(Object request, StringBuilder out) {
+        if (!(request instanceof Map<?, ?> m)) {
+            out.append("{\"error\":\"Expected a JSON object\"}");
+            return;
+        }
+        EvaluationContext ctx = engine.newContext();
+        try {
+            if (m.get("degrees") instanceof Boolean d) ctx.setDegrees(d);
+            Object vars = m.get("variables");
+            if (vars instanceof Map<?, ?> vm) {
+                for (Map.Entry<?, ?> e: vm.entrySet()) {
+                    if (!(e.getValue() instanceof Double v)) throw new RuntimeException("Variable '" + e.getKey() + "' is not a number");
+                    ctx.setVariable((String) e.getKey(), v);
+                }
+            } else if (vars != null) {
+                throw new RuntimeException("variables must be an object");
+            }
+        } catch (RuntimeException e) {
+            out.append("{\"error\":").append(MiniJson.quote(String.valueOf(e.getMessage()))).append('}');
+            return;
+        }
+        if (m.get("expr") instanceof String expr) {
+            appendResult(ctx, expr, out);
+        } else if (m.get("expressions") instanceof List<?> exprs) {
+            Map<String, CompiledExpression> compiled = new HashMap<>();
+            out.append("{\"results\":[");
+            for (int i = 0; i < exprs.size(); i++) {
+                if (i > 0) out.append(',');
+                if (exprs.get(i) instanceof String expr) appendResult(ctx, compiled, expr, out);
+                else out.append("{\"error\":\"Expected a string\"}");
+            }
+            out.append("]}");
+        } else {
+            out.append("{\"error\":\"Missing expr or expressions\"}");
+        }
+    }
+
+    private void appendResult(EvaluationContext ctx, String expr, StringBuilder out) {
+        appendResult(ctx, null, expr, out);
+    }
+
+    private void appendResult(EvaluationContext ctx, Map<String, CompiledExpression> compiled, String expr, StringBuilder out) {
+        try {
+            CompiledExpression ce = compiled == null ? engine.compile(expr) : compiled.computeIfAbsent(expr, engine::compile);
+            double v = ce.evaluate(ctx);
+            out.append("{\"value\":").append(MiniJson.number(v)).append('}');
+        } catch (RuntimeException e) {
+            out.append("{\"error\":").append(MiniJson.quote(String.valueOf(e.getMessage()))).append('}');
+        } catch (StackOverflowError e) {
+            out.append("{\"error\":").append(MiniJson.quote(TOO_DEEP)).append('}');
+        }
+    }
+
+    /** Text batch: one result line per input line, blank lines echoed as blank. */
+    String evaluateLines(String text) {
+        EvaluationContext ctx = engine.newContext();
+        Map<String, CompiledExpression> compiled = new HashMap<>();
+        StringBuilder out = new StringBuilder();
+        int lineNo = 0;
+        for (String line: text.split("\r?\n", -1)) {
+            lineNo++;
+            String expr = line.trim();
+            if (!expr.isEmpty()) {
+                try {
+                    out.append(CalculatorEngine.format(compiled.computeIfAbsent(expr, engine::compile).evaluate(ctx)));
+                } catch (RuntimeException e) {
+                    out.append("ERROR ").append(lineNo).append(": ").append(e.getMessage());
+                } catch (StackOverflowError e) {
+                    out.append("ERROR ").append(lineNo).append(": ").append(TOO_DEEP);
+                }
+            }
+            out.append('\n');
+        }
+        // split keeps the empty string after a trailing newline; don't answer it
+        if (text.endsWith("\n")) out.setLength(out.length() - 1);
+        return out.toString();
+    }
+
+    private static boolean startsWithJson(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (!Character.isWhitespace(c)) return c == '{' || c == '[';
+        }
+        return false;
+    }
+
+    private static String decode(String s) { return URLDecoder.decode(s, StandardCharsets.UTF_8); }
+
+    // null if the body exceeds MAX_BODY_BYTES
+    private static byte[] readBody(InputStream in) throws IOException {
+        byte[] body = in.readNBytes(MAX_BODY_BYTES + 1);
+        return body.length > MAX_BODY_BYTES ? null : body;
+    }
+
+    private static void send(HttpExchange ex, int status, String type, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        ex.getResponseHeaders().set("Content-Type", type + "; charset=utf-8");
+        ex.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+        if (bytes.length > 0) {
+            try (OutputStream os = ex.getResponseBody()) { os.write(bytes); }
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package calculator;
+
+import javax.swing.AbstractListModel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * History entries for the Swing history panel, newest first. Entries are held in
+ * chronological order and index-mapped in reverse, so adding the newest entry is an O(1)
+ * append plus a single-row insertion event; with a fixed cell size the JList then lays
+ * out and paints only the visible rows regardless of history length. EDT-only, like
+ * every Swing model.
+ */
+public class HistoryListModel extends AbstractListModel<String> {
+    private static final long serialVersionUID = 1L;
+
+    private final List<String> entries = new ArrayList<>();
+    // adds since construction; a merge keeps the rows added after the count it was given
+    private long added;
+
+    @Override public int getSize() { return entries.size(); }
+    @Override public String getElementAt(int index) { return entries.get(entries.size() - 1 - index); }
+
+    /** Adds the newest entry; it appears at the top. */
+    public void add(String entry) {
+        entries.add(entry);
+        added++;
+        fireIntervalAdded(this, 0, 0);
+    }
+
+    /** Count of {@link #add} calls so far; pass it to {@link #merge} for a page read after this call. */
+    public long addCount() { return added; }
+
+    /**
+     * Replaces everything except the rows added since {@code addCount} with {@code newestFirst},
+     * which are shown below them. Used for a page read from the store in the background, which
+     * cannot contain those rows.
+     */
+    public void merge(List<String> newestFirst, long addCount) {
+        int old = entries.size(), keep = (int) Math.min(added - addCount, old);
+        List<String> newer = new ArrayList<>(entries.subList(old - keep, old));
+        entries.clear();
+        if (old > keep) fireIntervalRemoved(this, keep, old - 1);
+        for (int i = newestFirst.size() - 1; i >= 0; i--) entries.add(newestFirst.get(i));
+        entries.addAll(newer);
+        if (entries.size() > keep) fireIntervalAdded(this, keep, entries.size() - 1);
+    }
+
+    /** Adds {@code newestFirst}, all older than every current row, at the bottom. */
+    public void addOlder(List<String> newestFirst) {
+        if (newestFirst.isEmpty()) return;
+        List<String> older = new ArrayList<>(newestFirst);
+        Collections.reverse(older);
+        entries.addAll(0, older);
+        fireIntervalAdded(this, entries.size() - older.size(), entries.size() - 1);
+    }
+
+    /** Replaces the contents with {@code chronological} (oldest first). */
+    public void setAll(List<String> chronological) {
+        int old = entries.size();
+        entries.clear();
+        if (old > 0) fireIntervalRemoved(this, 0, old - 1);
+        entries.addAll(chronological);
+        if (!entries.isEmpty()) fireIntervalAdded(this, 0, entries.size() - 1);
+    }
+}
@@ -0,0 +1,155 @@
+package calculator;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Calculation history, kept in a {@link HistoryStore} directory next to the given file name
+ * ({@code history.txt} is stored in {@code history.d/}). A {@code history.txt} left by an
+ * earlier version is imported on construction and renamed to {@code history.txt.imported}.
+ */
+public class HistoryManager implements AutoCloseable {
+    private final Path historyFile;
+    private final HistoryStore store;
+    private volatile AsyncHistoryWriter async;
+    // stamping, queueing and numbering happen together, so the store never has to raise a timestamp
+    // and nextSeq matches the seq the store assigns
+    private final Object appendLock = new Object();
+    private long lastTimestamp = Long.MIN_VALUE, nextSeq;
+
+    public HistoryManager() {
+        this("history.txt");
+    }
+    public HistoryManager(String filename) {
+        historyFile = Paths.get(filename);
+        String name = historyFile.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        store = new HistoryStore(historyFile.resolveSibling((dot > 0 ? name.substring(0, dot) : name) + ".d"));
+        importText();
+        List<HistoryStore.Entry> last = store.tail(1);
+        if (!last.isEmpty()) lastTimestamp = last.get(0).timestamp;
+        nextSeq = store.size();
+    }
+
+    // the store only imports into an empty history, so a crash before the rename just repeats a no-op
+    private void importText() {
+        if (!Files.exists(historyFile)) return;
+        store.importText(historyFile);
+        store.sync();
+        try {
+            Files.move(historyFile, historyFile.resolveSibling(historyFile.getFileName() + ".imported"), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Switches {@link #append} to a background writer that batches entries; reads and
+     * {@link #clear} flush it first so they always see every appended entry.
+     */
+    public synchronized void enableAsync(AsyncHistoryWriter.Options options) {
+        if (async != null) return;
+        async = new AsyncHistoryWriter(store, options);
+    }
+    public boolean isAsync() { return async != null; }
+
+    /** Appends one entry and returns it as it reads back from {@link #readAll} and {@link #tail}. */
+    public String append(String expr, String result) {
+        if (!EngineMetrics.isEnabled()) return write(expr, result);
+        long t0 = System.nanoTime();
+        boolean ok = false;
+        try {
+            String entry = write(expr, result);
+            ok = true;
+            return entry;
+        } finally {
+            EngineMetrics.record(EngineMetrics.Op.HISTORY_APPEND, t0, !ok, expr);
+        }
+    }
+
+    private String write(String expr, String result) {
+        synchronized (appendLock) {
+            long ts = lastTimestamp = Math.max(System.currentTimeMillis(), lastTimestamp);
+            AsyncHistoryWriter w = async;
+            boolean stored = true;
+            if (w == null) store.append(ts, expr, result);
+            else stored = w.append(ts, expr, result);
+            if (stored) nextSeq++;
+            return new HistoryStore.Entry(-1, ts, expr, result).toString();
+        }
+    }
+
+    /** Blocks until asynchronously appended entries are on disk; a no-op in synchronous mode. */
+    public void flush() {
+        AsyncHistoryWriter w = async;
+        if (w != null) w.flush();
+    }
+
+    /**
+     * Sequence number the next stored entry gets. Every entry below it has been appended, though
+     * it may still be queued; {@code page(nextSeq(), n)} therefore reads exactly the entries
+     * appended before this call, however many more are appended meanwhile.
+     */
+    public long nextSeq() {
+        synchronized (appendLock) { return nextSeq; }
+    }
+
+    /** Number of entries, including any still queued. */
+    public long size() {
+        flush();
+        return store.size();
+    }
+
+    /** The newest {@code n} entries, newest first; reads only those records. */
+    public List<HistoryStore.Entry> tail(int n) {
+        flush();
+        return store.tail(n);
+    }
+
+    /** Up to {@code n} entries with {@code seq < before}, newest first, for paging back through the history. */
+    public List<HistoryStore.Entry> page(long before, int n) {
+        flush();
+        return store.page(before, n);
+    }
+
+    /** Every entry, oldest first, in the {@code <time> | <expr> = <result>} text form. Prefer {@link #tail} and {@link #page}. */
+    public List<String> readAll() {
+        if (!EngineMetrics.isEnabled()) return read();
+        long t0 = System.nanoTime();
+        boolean ok = false;
+        try {
+            List<String> lines = read();
+            ok = true;
+            return lines;
+        } finally {
+            EngineMetrics.record(EngineMetrics.Op.HISTORY_READ, t0, !ok, historyFile.toString());
+        }
+    }
+
+    private List<String> read() {
+        flush();
+        List<String> lines = new ArrayList<>();
+        for (HistoryStore.Entry e: store.range(Long.MIN_VALUE, Long.MAX_VALUE)) lines.add(e.toString());
+        return lines;
+    }
+
+    public void clear() {
+        synchronized (appendLock) {
+            flush();
+            store.compact(Long.MAX_VALUE);
+            nextSeq = 0;
+        }
+    }
+
+    /** Drains and stops the background writer, if any, and closes the store. */
+    @Override public synchronized void close() {
+        AsyncHistoryWriter w = async;
+        async = null;
+        try {
+            if (w != null) w.close();
+        } finally {
+            store.close();
+        }
+    }
+}
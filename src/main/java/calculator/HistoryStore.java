@@ -0,0 +1,439 @@
+package calculator;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+
+/**
+ * Binary, indexed history store for long-lived histories. Entries go to numbered segments in a
+ * directory; each segment is a data file of records
+ * {@code [long epochMillis][int exprBytes][int resultBytes][expr UTF-8][result UTF-8]}
+ * plus a sidecar {@code .idx} of fixed 16-byte {@code [long offset][long epochMillis]} slots.
+ * Reads go through read-only memory maps, so {@link #tail}, {@link #page}, {@link #range} and
+ * {@link #search} touch only the records they return (or scan) and never load the whole history.
+ * <p>
+ * Timestamps are kept non-decreasing (an entry older than its predecessor is stamped with the
+ * predecessor's time), which lets time-range queries binary-search the index.
+ * <p>
+ * A {@code segments.manifest} file names the live segment range. It is replaced atomically when
+ * a segment is added and when {@link #compact} commits, and on open any segment outside the range
+ * (left by an interrupted compaction) is deleted, so entries are never loaded twice.
+ */
+public final class HistoryStore implements AutoCloseable {
+    public static final long DEFAULT_SEGMENT_BYTES = 16L * 1024 * 1024;
+    private static final int INDEX_SLOT = 16, HEADER = 16;
+    private static final String MANIFEST = "segments.manifest";
+    private static final ZoneId ZONE = ZoneId.systemDefault();
+
+    public static final class Entry {
+        public final long seq, timestamp;
+        public final String expression, result;
+        Entry(long seq, long timestamp, String expression, String result) {
+            this.seq = seq; this.timestamp = timestamp; this.expression = expression; this.result = result;
+        }
+        /** Same layout as a {@code history.txt} line. */
+        @Override public String toString() {
+            return LocalDateTime.ofInstant(Instant.ofEpochMilli(timestamp), ZONE) + " | " + expression + " = " + result;
+        }
+    }
+
+    private final Path dir;
+    private final long maxSegmentBytes;
+    private final List<Segment> segments = new ArrayList<>();
+    private long size, lastTimestamp = Long.MIN_VALUE;
+
+    public HistoryStore(Path dir) { this(dir, DEFAULT_SEGMENT_BYTES); }
+    public HistoryStore(Path dir, long maxSegmentBytes) {
+        // record offsets within a segment are read as ints from the memory map
+        if (maxSegmentBytes <= 0 || maxSegmentBytes > Integer.MAX_VALUE) throw new RuntimeException("Segment size must be between 1 and 2^31-1 bytes");
+        this.dir = dir;
+        this.maxSegmentBytes = maxSegmentBytes;
+        try {
+            Files.createDirectories(dir);
+            List<Integer> ids = new ArrayList<>();
+            try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir, "segment-*.{dat,idx}")) {
+                for (Path p: ds) {
+                    String name = p.getFileName().toString();
+                    int id = Integer.parseInt(name.substring(8, name.length() - 4));
+                    if (!ids.contains(id)) ids.add(id);
+                }
+            }
+            Collections.sort(ids);
+            int[] live = readManifest();
+            for (int id: ids) {
+                if (live == null || (id >= live[0] && id <= live[1])) openSegment(id);
+                else deleteSegmentFiles(id);
+            }
+            if (segments.isEmpty()) openSegment(live != null ? live[0] : 1);
+            writeManifest(segments);
+            for (int i = segments.size() - 1; i >= 0 && lastTimestamp == Long.MIN_VALUE; i--) {
+                Segment s = segments.get(i);
+                if (s.count > 0) lastTimestamp = s.timestampAt(s.count - 1);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private Segment openSegment(int id) throws IOException {
+        Segment s = new Segment(id, size);
+        segments.add(s);
+        size += s.count;
+        return s;
+    }
+
+    // a new last segment is recorded in the manifest before anything is written to it
+    private Segment addSegment(int id) throws IOException {
+        Segment s = openSegment(id);
+        writeManifest(segments);
+        return s;
+    }
+
+    // {first, last} live segment id, or null for a store written before the manifest existed
+    private int[] readManifest() throws IOException {
+        Path p = dir.resolve(MANIFEST);
+        if (!Files.exists(p)) return null;
+        String[] f = new String(Files.readAllBytes(p), StandardCharsets.UTF_8).trim().split(" ");
+        if (f.length != 2) throw new RuntimeException("Malformed history manifest " + p);
+        return new int[]{ Integer.parseInt(f[0]), Integer.parseInt(f[1]) };
+    }
+
+    private void writeManifest(List<Segment> live) throws IOException {
+        Path tmp = dir.resolve(MANIFEST + ".tmp");
+        byte[] text = (live.get(0).id + " " + live.get(live.size() - 1).id + "\n").getBytes(StandardCharsets.UTF_8);
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer b = ByteBuffer.wrap(text);
+            while (b.hasRemaining()) ch.write(b);
+            ch.force(true);
+        }
+        Files.move(tmp, dir.resolve(MANIFEST), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    // an empty segment that no earlier, failed compaction left data in
+    private Segment newSegment(int id, long start) throws IOException {
+        deleteSegmentFiles(id);
+        return new Segment(id, start);
+    }
+
+    private void deleteSegmentFiles(int id) throws IOException {
+        String base = String.format("segment-%06d", id);
+        Files.deleteIfExists(dir.resolve(base + ".dat"));
+        Files.deleteIfExists(dir.resolve(base + ".idx"));
+    }
+
+    public synchronized long size() { return size; }
+
+    public void append(String expression, String result) { append(System.currentTimeMillis(), expression, result); }
+
+    public synchronized void append(long epochMillis, String expression, String result) {
+        appendAll(Collections.singletonList(new Entry(-1, epochMillis, expression, result)));
+    }
+
+    /**
+     * Appends entries in order (their {@code seq} is ignored) with one data write and one index
+     * write per segment they land in.
+     */
+    public synchronized void appendAll(List<Entry> batch) {
+        int n = batch.size();
+        long[] ts = new long[n];
+        byte[][] e = new byte[n][], r = new byte[n][];
+        long last = lastTimestamp;
+        for (int i = 0; i < n; i++) {
+            Entry x = batch.get(i);
+            ts[i] = last = Math.max(x.timestamp, last);
+            e[i] = x.expression.getBytes(StandardCharsets.UTF_8);
+            r[i] = x.result.getBytes(StandardCharsets.UTF_8);
+        }
+        try {
+            for (int i = 0; i < n; ) {
+                Segment s = segments.get(segments.size() - 1);
+                if (s.count > 0 && s.dataSize + HEADER + e[i].length + r[i].length > maxSegmentBytes) s = addSegment(s.id + 1);
+                long bytes = s.dataSize + HEADER + e[i].length + r[i].length;
+                int j = i + 1;
+                for (; j < n; j++) {
+                    long next = bytes + HEADER + e[j].length + r[j].length;
+                    if (next > maxSegmentBytes) break;
+                    bytes = next;
+                }
+                s.append(ts, e, r, i, j);
+                size += j - i;
+                lastTimestamp = ts[j - 1];
+                i = j;
+            }
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    public synchronized Entry get(long seq) {
+        if (seq < 0 || seq >= size) throw new RuntimeException("No history entry " + seq);
+        Segment s = segmentFor(seq);
+        return s.read((int) (seq - s.start));
+    }
+
+    /** The newest {@code n} entries, newest first. */
+    public List<Entry> tail(int n) { return page(Long.MAX_VALUE, n); }
+
+    /** Up to {@code n} entries with {@code seq < before}, newest first; pass the last seq seen to page further back. */
+    public synchronized List<Entry> page(long before, int n) {
+        List<Entry> out = new ArrayList<>();
+        for (long seq = Math.min(before, size) - 1; seq >= 0 && out.size() < n; seq--) out.add(get(seq));
+        return out;
+    }
+
+    /** Entries with {@code from <= timestamp < to}, oldest first. */
+    public synchronized List<Entry> range(long fromMillis, long toMillis) {
+        List<Entry> out = new ArrayList<>();
+        for (long seq = lowerBound(fromMillis); seq < size; seq++) {
+            Segment s = segmentFor(seq);
+            int local = (int) (seq - s.start);
+            if (s.timestampAt(local) >= toMillis) break;
+            out.add(s.read(local));
+        }
+        return out;
+    }
+
+    /** Up to {@code limit} entries whose expression or result contains {@code needle}, newest first. */
+    public synchronized List<Entry> search(String needle, int limit) {
+        List<Entry> out = new ArrayList<>();
+        byte[] pattern = needle.getBytes(StandardCharsets.UTF_8);
+        for (int i = segments.size() - 1; i >= 0 && out.size() < limit; i--) {
+            Segment s = segments.get(i);
+            for (int local = s.count - 1; local >= 0 && out.size() < limit; local--) {
+                if (s.contains(local, pattern)) out.add(s.read(local));
+            }
+        }
+        return out;
+    }
+
+    // first seq whose timestamp is >= t
+    private long lowerBound(long t) {
+        long lo = 0, hi = size;
+        while (lo < hi) {
+            long mid = (lo + hi) >>> 1;
+            Segment s = segmentFor(mid);
+            if (s.timestampAt((int) (mid - s.start)) < t) lo = mid + 1; else hi = mid;
+        }
+        return lo;
+    }
+
+    private Segment segmentFor(long seq) {
+        int lo = 0, hi = segments.size() - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (segments.get(mid).start <= seq) lo = mid; else hi = mid - 1;
+        }
+        return segments.get(lo);
+    }
+
+    /**
+     * Drops entries older than {@code retainFromMillis} and rewrites the survivors into as few
+     * full-size segments as possible. Sequence numbers restart from 0.
+     * <p>
+     * The survivors go to new segments numbered after the current ones, which the manifest does
+     * not yet cover; rewriting the manifest is the commit point and the old segments are deleted
+     * after it. If anything fails before the commit, the new segments are removed and the store
+     * is left as it was.
+     */
+    public synchronized void compact(long retainFromMillis) {
+        List<Segment> fresh = new ArrayList<>();
+        long first = lowerBound(retainFromMillis), kept = 0;
+        try {
+            fresh.add(newSegment(segments.get(segments.size() - 1).id + 1, 0));
+            for (long seq = first; seq < size; seq++) {
+                Segment src = segmentFor(seq);
+                int local = (int) (seq - src.start);
+                byte[][] raw = src.rawStrings(local);
+                Segment s = fresh.get(fresh.size() - 1);
+                if (s.count > 0 && s.dataSize + HEADER + raw[0].length + raw[1].length > maxSegmentBytes) {
+                    s = newSegment(s.id + 1, kept);
+                    fresh.add(s);
+                }
+                s.append(new long[]{ src.timestampAt(local) }, new byte[][]{ raw[0] }, new byte[][]{ raw[1] }, 0, 1);
+                kept++;
+            }
+            for (Segment s: fresh) s.sync();
+            writeManifest(fresh);
+        } catch (IOException | RuntimeException e) {
+            for (Segment s: fresh) {
+                try { s.delete(); } catch (IOException ignored) { }
+            }
+            throw e instanceof RuntimeException ? (RuntimeException) e : new RuntimeException(e);
+        }
+        List<Segment> old = new ArrayList<>(segments);
+        segments.clear();
+        segments.addAll(fresh);
+        size = kept;
+        // committed; a file that cannot be deleted now is outside the manifest and goes on the next open
+        for (Segment s: old) {
+            try { s.delete(); } catch (IOException ignored) { }
+        }
+    }
+
+    /**
+     * One-time import of a {@code history.txt} written by {@link HistoryManager}
+     * ({@code <LocalDateTime> | <expr> = <result>} per line). Only runs into an empty store,
+     * so re-running it is harmless. Returns the number of imported entries; malformed lines are skipped.
+     */
+    public synchronized long importText(Path historyTxt) {
+        if (size > 0 || !Files.exists(historyTxt)) return 0;
+        long imported = 0;
+        try (BufferedReader in = Files.newBufferedReader(historyTxt)) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                int bar = line.indexOf(" | "), eq = line.lastIndexOf(" = ");
+                if (bar < 0 || eq < bar) continue;
+                long ts;
+                try {
+                    ts = LocalDateTime.parse(line.substring(0, bar)).atZone(ZONE).toInstant().toEpochMilli();
+                } catch (DateTimeParseException e) {
+                    continue;
+                }
+                append(ts, line.substring(bar + 3, eq), line.substring(eq + 3));
+                imported++;
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return imported;
+    }
+
+    /** Forces written entries to disk. */
+    public synchronized void sync() {
+        try {
+            segments.get(segments.size() - 1).sync();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override public synchronized void close() {
+        for (Segment s: segments) s.close();
+    }
+
+    private final class Segment {
+        final int id;
+        final long start;
+        final Path dataPath, indexPath;
+        final FileChannel data, index;
+        int count;
+        long dataSize;
+        private MappedByteBuffer dataMap, indexMap;
+
+        Segment(int id, long start) throws IOException {
+            this.id = id; this.start = start;
+            String base = String.format("segment-%06d", id);
+            dataPath = dir.resolve(base + ".dat");
+            indexPath = dir.resolve(base + ".idx");
+            data = FileChannel.open(dataPath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            index = FileChannel.open(indexPath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            // a torn final index slot (crash mid-append) is dropped along with its record
+            count = (int) (index.size() / INDEX_SLOT);
+            index.truncate((long) count * INDEX_SLOT);
+            if (count > 0) {
+                ByteBuffer slot = ByteBuffer.allocate(INDEX_SLOT);
+                index.read(slot, (long) (count - 1) * INDEX_SLOT);
+                long off = slot.getLong(0);
+                ByteBuffer h = ByteBuffer.allocate(HEADER);
+                data.read(h, off);
+                dataSize = off + HEADER + h.getInt(8) + h.getInt(12);
+            }
+            data.truncate(dataSize);
+        }
+
+        // records from..to-1 go in with one data write, then one index write
+        void append(long[] ts, byte[][] e, byte[][] r, int from, int to) throws IOException {
+            int bytes = 0;
+            for (int k = from; k < to; k++) bytes += HEADER + e[k].length + r[k].length;
+            ByteBuffer rec = ByteBuffer.allocate(bytes), slots = ByteBuffer.allocate((to - from) * INDEX_SLOT);
+            long off = dataSize;
+            for (int k = from; k < to; k++) {
+                rec.putLong(ts[k]).putInt(e[k].length).putInt(r[k].length).put(e[k]).put(r[k]);
+                slots.putLong(off).putLong(ts[k]);
+                off += HEADER + e[k].length + r[k].length;
+            }
+            rec.flip();
+            slots.flip();
+            long pos = dataSize;
+            while (rec.hasRemaining()) pos += data.write(rec, pos);
+            long ipos = (long) count * INDEX_SLOT;
+            while (slots.hasRemaining()) ipos += index.write(slots, ipos);
+            dataSize = pos;
+            count += to - from;
+        }
+
+        private MappedByteBuffer indexMap() {
+            long need = (long) count * INDEX_SLOT;
+            if (indexMap == null || indexMap.capacity() < need) indexMap = map(index, need);
+            return indexMap;
+        }
+        private MappedByteBuffer dataMap() {
+            if (dataMap == null || dataMap.capacity() < dataSize) dataMap = map(data, dataSize);
+            return dataMap;
+        }
+        private MappedByteBuffer map(FileChannel ch, long len) {
+            try {
+                return ch.map(FileChannel.MapMode.READ_ONLY, 0, len);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        long offsetAt(int local) { return indexMap().getLong(local * INDEX_SLOT); }
+        long timestampAt(int local) { return indexMap().getLong(local * INDEX_SLOT + 8); }
+
+        byte[][] rawStrings(int local) {
+            MappedByteBuffer m = dataMap();
+            int off = (int) offsetAt(local);
+            byte[] e = new byte[m.getInt(off + 8)], r = new byte[m.getInt(off + 12)];
+            m.get(off + HEADER, e);
+            m.get(off + HEADER + e.length, r);
+            return new byte[][]{ e, r };
+        }
+
+        Entry read(int local) {
+            byte[][] raw = rawStrings(local);
+            return new Entry(start + local, timestampAt(local),
+                    new String(raw[0], StandardCharsets.UTF_8), new String(raw[1], StandardCharsets.UTF_8));
+        }
+
+        // byte-level scan of the record body, so non-matching entries are never decoded
+        boolean contains(int local, byte[] pattern) {
+            MappedByteBuffer m = dataMap();
+            int off = (int) offsetAt(local);
+            int eLen = m.getInt(off + 8), rLen = m.getInt(off + 12);
+            int body = off + HEADER;
+            return indexOf(m, body, eLen, pattern) || indexOf(m, body + eLen, rLen, pattern);
+        }
+        private boolean indexOf(MappedByteBuffer m, int from, int len, byte[] p) {
+            outer:
+            for (int i = 0; i <= len - p.length; i++) {
+                for (int j = 0; j < p.length; j++) if (m.get(from + i + j) != p[j]) continue outer;
+                return true;
+            }
+            return false;
+        }
+
+        void sync() throws IOException { data.force(false); index.force(false); }
+
+        void close() {
+            try { data.close(); index.close(); } catch (IOException ignored) { }
+        }
+
+        void delete() throws IOException {
+            close();
+            dataMap = null; indexMap = null;
+            Files.deleteIfExists(dataPath);
+            Files.deleteIfExists(indexPath);
+        }
+    }
+}
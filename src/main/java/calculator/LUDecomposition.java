@@ -0,0 +1,102 @@
+package calculator;
+
+/**
+ * LU decomposition with partial (row) pivoting, PA = LU, computed once in O(n³) and
+ * reused for the determinant, the inverse and any number of {@link #solve} calls.
+ * L (unit diagonal, not stored) and U share one flat row-major array.
+ * <p>
+ * The matrix counts as singular when a pivot is at most {@code n·ε·‖A‖∞}, the rounding error
+ * elimination can introduce, so the test scales with the matrix: {@code 0.01·I} is regular,
+ * while {@code [[1,2,3],[4,5,6],[7,8,9]]}, whose last pivot is rounding noise, is singular.
+ */
+public final class LUDecomposition {
+    private final int n;
+    private final double[] lu;
+    private final int[] piv;
+    private final int sign;
+    private final boolean singular;
+
+    public LUDecomposition(Matrix m) {
+        if (m.rows!=m.cols) throw new RuntimeException("Not square");
+        n = m.rows;
+        lu = m.toRowMajor();
+        double norm = 0;
+        for (int i=0;i<n;i++) {
+            double row = 0;
+            for (int j=0;j<n;j++) row += Math.abs(lu[i*n+j]);
+            norm = Math.max(norm, row);
+        }
+        double tolerance = n * Math.ulp(1.0) * norm;
+        piv = new int[n];
+        for (int i=0;i<n;i++) piv[i] = i;
+        int s = 1;
+        boolean sing = false;
+        for (int k=0;k<n;k++) {
+            int p = k;
+            double max = Math.abs(lu[k*n+k]);
+            for (int i=k+1;i<n;i++) {
+                double v = Math.abs(lu[i*n+k]);
+                if (v > max) { max = v; p = i; }
+            }
+            if (p != k) {
+                for (int j=0;j<n;j++) { double t = lu[p*n+j]; lu[p*n+j] = lu[k*n+j]; lu[k*n+j] = t; }
+                int t = piv[p]; piv[p] = piv[k]; piv[k] = t;
+                s = -s;
+            }
+            double pivot = lu[k*n+k];
+            if (max <= tolerance || Double.isNaN(max)) sing = true;
+            if (pivot == 0) continue;
+            for (int i=k+1;i<n;i++) {
+                double f = lu[i*n+k] /= pivot;
+                if (f == 0) continue;
+                for (int j=k+1;j<n;j++) lu[i*n+j] -= f*lu[k*n+j];
+            }
+        }
+        sign = s;
+        singular = sing;
+    }
+
+    /** True if a pivot fell within rounding error of zero (see the class comment); solve/inverse then throw. */
+    public boolean isSingular() { return singular; }
+
+    public double determinant() {
+        double d = sign;
+        for (int i=0;i<n;i++) d *= lu[i*n+i];
+        return d;
+    }
+
+    /** Solves A·X = B for X, column by column of {@code b}. */
+    public Matrix solve(Matrix b) {
+        if (b.rows!=n) throw new RuntimeException("Dimension mismatch");
+        if (singular) throw new RuntimeException("Singular");
+        int m = b.cols;
+        double[] src = b.toRowMajor();
+        double[] x = new double[n*m];
+        for (int i=0;i<n;i++) System.arraycopy(src, piv[i]*m, x, i*m, m);
+        // forward substitution with unit-diagonal L
+        for (int k=0;k<n;k++) {
+            for (int i=k+1;i<n;i++) {
+                double f = lu[i*n+k];
+                if (f == 0) continue;
+                for (int j=0;j<m;j++) x[i*m+j] -= f*x[k*m+j];
+            }
+        }
+        // back substitution with U
+        for (int k=n-1;k>=0;k--) {
+            double d = lu[k*n+k];
+            for (int j=0;j<m;j++) x[k*m+j] /= d;
+            for (int i=0;i<k;i++) {
+                double f = lu[i*n+k];
+                if (f == 0) continue;
+                for (int j=0;j<m;j++) x[i*m+j] -= f*x[k*m+j];
+            }
+        }
+        return Matrix.wrap(n, m, x);
+    }
+
+    public Matrix inverse() {
+        double[] id = new double[n*n];
+        for (int i=0;i<n;i++) id[i*n+i] = 1;
+        return solve(Matrix.wrap(n, n, id));
+    }
+}
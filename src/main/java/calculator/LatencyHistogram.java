@@ -0,0 +1,69 @@
+package calculator;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed-size, lock-free latency histogram in the HDR style: values are bucketed by power of
+ * two with 16 linear sub-buckets each, so any recorded value is reported within 1/16
+ * (6.25%) of its true magnitude, and memory stays constant however many values are recorded.
+ * Values are nanoseconds; anything above 2^40 ns (about 18 minutes) lands in the last bucket.
+ */
+public final class LatencyHistogram {
+    private static final int SUB_BITS = 4, SUB = 1 << SUB_BITS, MAX_EXP = 40;
+    private static final int BUCKETS = (MAX_EXP - SUB_BITS + 2) * SUB + 1;
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLongArray stats = new AtomicLongArray(3); // count, sum, max
+
+    public void record(long nanos) {
+        if (nanos < 0) nanos = 0;
+        counts.incrementAndGet(index(nanos));
+        stats.incrementAndGet(0);
+        stats.addAndGet(1, nanos);
+        long max;
+        while (nanos > (max = stats.get(2)) && !stats.compareAndSet(2, max, nanos)) { }
+    }
+
+    private static int index(long v) {
+        if (v < SUB) return (int) v;
+        int exp = 63 - Long.numberOfLeadingZeros(v);
+        if (exp > MAX_EXP) return BUCKETS - 1;
+        int sub = (int) (v >>> (exp - SUB_BITS)) & (SUB - 1);
+        return (exp - SUB_BITS + 1) * SUB + sub;
+    }
+
+    // upper edge of a bucket, the value reported for it
+    private static long bucketValue(int i) {
+        if (i < SUB) return i;
+        if (i == BUCKETS - 1) return Long.MAX_VALUE;
+        int exp = i / SUB + SUB_BITS - 1, sub = i % SUB;
+        return ((long) (SUB + sub + 1) << (exp - SUB_BITS)) - 1;
+    }
+
+    public long count() { return stats.get(0); }
+    public long max() { return stats.get(2); }
+    public double mean() { long c = count(); return c == 0 ? 0 : (double) stats.get(1) / c; }
+
+    /** Value at percentile {@code p} in [0, 100], never more than the recorded maximum. */
+    public long percentile(double p) {
+        long total = count();
+        if (total == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(p / 100.0 * total));
+        long seen = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            seen += counts.get(i);
+            if (seen >= rank) return Math.min(bucketValue(i), max());
+        }
+        return max();
+    }
+
+    public void reset() {
+        for (int i = 0; i < counts.length(); i++) counts.set(i, 0);
+        for (int i = 0; i < stats.length(); i++) stats.set(i, 0);
+    }
+
+    /** One-line summary in microseconds. */
+    public String summary() {
+        return String.format("n=%d mean=%.1fus p50=%.1fus p90=%.1fus p99=%.1fus p99.9=%.1fus max=%.1fus",
+                count(), mean() / 1e3, percentile(50) / 1e3, percentile(90) / 1e3, percentile(99) / 1e3, percentile(99.9) / 1e3, max() / 1e3);
+    }
+}
@@ -0,0 +1,88 @@
+package calculator;
+
+import java.util.*;
+
+/**
+ * Single-pass character scanner for calculator expressions. Whitespace is skipped,
+ * '×'/'÷' are folded into '*'/'/', identifiers are classified as functions or variables
+ * and a '-' in prefix position is emitted as {@link Token.Kind#UNARY_MINUS}. A number
+ * directly followed by {@code i} (as in {@code 2.5i}) is an {@link Token.Kind#IMAGINARY} literal.
+ */
+public final class Lexer {
+    private final String src;
+    private final Set<String> functions;
+
+    public Lexer(String src, Set<String> functions) {
+        this.src = src; this.functions = functions;
+    }
+
+    public List<Token> tokenize() {
+        List<Token> tokens = new ArrayList<>();
+        int n = src.length();
+        int i = 0;
+        while (i < n) {
+            char c = src.charAt(i);
+            int col = i + 1;
+            if (Character.isWhitespace(c)) { i++; continue; }
+            if (isDigit(c) || (c == '.' && i + 1 < n && isDigit(src.charAt(i + 1)))) {
+                int start = i;
+                while (i < n && isDigit(src.charAt(i))) i++;
+                if (i < n && src.charAt(i) == '.') { i++; while (i < n && isDigit(src.charAt(i))) i++; }
+                if (i < n && (src.charAt(i) == 'e' || src.charAt(i) == 'E')) {
+                    // only an exponent if digits follow, otherwise 'e' starts an identifier
+                    int j = i + 1;
+                    if (j < n && (src.charAt(j) == '+' || src.charAt(j) == '-')) j++;
+                    if (j < n && isDigit(src.charAt(j))) {
+                        i = j;
+                        while (i < n && isDigit(src.charAt(i))) i++;
+                    }
+                }
+                String text = src.substring(start, i);
+                if (i < n && src.charAt(i) == 'i' && (i + 1 == n || !isIdentPart(src.charAt(i + 1)))) {
+                    i++;
+                    tokens.add(new Token(Token.Kind.IMAGINARY, text + "i", Double.parseDouble(text), col));
+                    continue;
+                }
+                tokens.add(new Token(Token.Kind.NUMBER, text, Double.parseDouble(text), col));
+                continue;
+            }
+            if (isIdentStart(c)) {
+                int start = i++;
+                while (i < n && isIdentPart(src.charAt(i))) i++;
+                String text = src.substring(start, i);
+                tokens.add(new Token(functions.contains(text) ? Token.Kind.FUNCTION : Token.Kind.VARIABLE, text, 0, col));
+                continue;
+            }
+            switch (c) {
+                case '(': tokens.add(new Token(Token.Kind.LPAREN, "(", 0, col)); break;
+                case ')': tokens.add(new Token(Token.Kind.RPAREN, ")", 0, col)); break;
+                case ',': tokens.add(new Token(Token.Kind.COMMA, ",", 0, col)); break;
+                case '-':
+                    tokens.add(prefixPosition(tokens)
+                            ? new Token(Token.Kind.UNARY_MINUS, "_", 0, col)
+                            : new Token(Token.Kind.OPERATOR, "-", 0, col));
+                    break;
+                case '+': case '*': case '/': case '^': case '%':
+                    tokens.add(new Token(Token.Kind.OPERATOR, String.valueOf(c), 0, col)); break;
+                case '×': tokens.add(new Token(Token.Kind.OPERATOR, "*", 0, col)); break;
+                case '÷': tokens.add(new Token(Token.Kind.OPERATOR, "/", 0, col)); break;
+                default: throw new RuntimeException("Unexpected character '" + c + "' at column " + col);
+            }
+            i++;
+        }
+        return tokens;
+    }
+
+    // A minus is unary at the start, or after '(', ',', an operator, a unary minus or a function name
+    private static boolean prefixPosition(List<Token> tokens) {
+        if (tokens.isEmpty()) return true;
+        switch (tokens.get(tokens.size() - 1).kind) {
+            case LPAREN: case COMMA: case OPERATOR: case UNARY_MINUS: case FUNCTION: return true;
+            default: return false;
+        }
+    }
+
+    private static boolean isDigit(char c) { return c >= '0' && c <= '9'; }
+    private static boolean isIdentStart(char c) { return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_'; }
+    private static boolean isIdentPart(char c) { return isIdentStart(c) || isDigit(c); }
+}
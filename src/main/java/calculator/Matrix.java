@@ -0,0 +1,170 @@
+package calculator;
+
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Dense matrix stored as one flat row-major {@code double[]} (element (i,j) at {@code i*cols+j}),
+ * so rows are contiguous and the multiply kernels stream through memory with unit stride.
+ */
+public class Matrix {
+    /** Tile edge for the blocked kernel: three 64x64 double tiles fit comfortably in L2. */
+    static final int BLOCK = 64;
+    /** Multiply-adds above which {@link #multiply} fans out over the fork-join pool. */
+    static final long PARALLEL_THRESHOLD = 128L * 128 * 128;
+
+    private final double[] a;
+    public final int rows, cols;
+    public Matrix(double[][] data) {
+        rows = data.length; cols = data[0].length; a = new double[rows*cols];
+        for (int i=0;i<rows;i++) System.arraycopy(data[i], 0, a, i*cols, cols);
+    }
+    private Matrix(int rows, int cols, double[] flat) {
+        this.rows = rows; this.cols = cols; this.a = flat;
+    }
+    // takes ownership of flat without copying
+    static Matrix wrap(int rows, int cols, double[] flat) { return new Matrix(rows, cols, flat); }
+    /** Wraps a copy of {@code data} laid out row-major. */
+    public static Matrix fromRowMajor(int rows, int cols, double[] data) {
+        if (data.length != rows*cols) throw new RuntimeException("Dimension mismatch");
+        return new Matrix(rows, cols, data.clone());
+    }
+    public double get(int i, int j) { return a[i*cols+j]; }
+    public double[] toRowMajor() { return a.clone(); }
+    public double[][] toArray() {
+        double[][] out = new double[rows][];
+        for (int i=0;i<rows;i++) out[i] = Arrays.copyOfRange(a, i*cols, (i+1)*cols);
+        return out;
+    }
+
+    public Matrix add(Matrix b) {
+        if (EngineMetrics.isEnabled()) return timed(EngineMetrics.Op.MATRIX_ADD, b, () -> addImpl(b));
+        return addImpl(b);
+    }
+    private Matrix addImpl(Matrix b) {
+        if (rows!=b.rows || cols!=b.cols) throw new RuntimeException("Dimension mismatch");
+        double[] out = new double[a.length];
+        for (int i=0;i<out.length;i++) out[i] = a[i] + b.a[i];
+        return new Matrix(rows, cols, out);
+    }
+
+    /**
+     * Picks the blocked kernel, or the parallel one for large products. All kernels accumulate
+     * each element over k in ascending order, so they return bit-identical results.
+     */
+    public Matrix multiply(Matrix b) {
+        if (EngineMetrics.isEnabled()) return timed(EngineMetrics.Op.MATRIX_MULTIPLY, b, () -> multiplyImpl(b));
+        return multiplyImpl(b);
+    }
+    private Matrix multiplyImpl(Matrix b) {
+        if ((long) rows*cols*b.cols >= PARALLEL_THRESHOLD && ForkJoinPool.getCommonPoolParallelism() > 1) return multiplyParallel(b);
+        return multiplyBlocked(b);
+    }
+    /** Reference i-j-k kernel; walks {@code b} down a column, so it is cache-hostile for large sizes. */
+    public Matrix multiplyNaive(Matrix b) {
+        if (cols!=b.rows) throw new RuntimeException("Dimension mismatch");
+        int n = b.cols;
+        double[] out = new double[rows*n];
+        for (int i=0;i<rows;i++) for (int j=0;j<n;j++) {
+            double s=0; for (int k=0;k<cols;k++) s += a[i*cols+k]*b.a[k*n+j]; out[i*n+j] = s;
+        }
+        return new Matrix(rows, n, out);
+    }
+    /** Tiled i-k-j kernel; the inner loop runs along rows of {@code b} and {@code out}. */
+    public Matrix multiplyBlocked(Matrix b) {
+        if (cols!=b.rows) throw new RuntimeException("Dimension mismatch");
+        double[] out = new double[rows*b.cols];
+        multiplyRows(b, out, 0, rows);
+        return new Matrix(rows, b.cols, out);
+    }
+    /** Blocked kernel over bands of rows, run on the common fork-join pool. */
+    public Matrix multiplyParallel(Matrix b) {
+        if (cols!=b.rows) throw new RuntimeException("Dimension mismatch");
+        double[] out = new double[rows*b.cols];
+        ForkJoinPool.commonPool().invoke(new MultiplyTask(b, out, 0, rows));
+        return new Matrix(rows, b.cols, out);
+    }
+
+    private void multiplyRows(Matrix b, double[] out, int rowFrom, int rowTo) {
+        int m = cols, n = b.cols;
+        double[] ba = b.a;
+        for (int ii=rowFrom;ii<rowTo;ii+=BLOCK) {
+            int iEnd = Math.min(ii+BLOCK, rowTo);
+            for (int kk=0;kk<m;kk+=BLOCK) {
+                int kEnd = Math.min(kk+BLOCK, m);
+                for (int jj=0;jj<n;jj+=BLOCK) {
+                    int jEnd = Math.min(jj+BLOCK, n);
+                    for (int i=ii;i<iEnd;i++) {
+                        int oRow = i*n;
+                        for (int k=kk;k<kEnd;k++) {
+                            double aik = a[i*m+k];
+                            int bRow = k*n;
+                            for (int j=jj;j<jEnd;j++) out[oRow+j] += aik*ba[bRow+j];
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @SuppressWarnings("serial") // fork-join tasks are never serialized
+    private final class MultiplyTask extends RecursiveAction {
+        private final Matrix b; private final double[] out; private final int from, to;
+        MultiplyTask(Matrix b, double[] out, int from, int to) { this.b = b; this.out = out; this.from = from; this.to = to; }
+        @Override protected void compute() {
+            if (to - from <= BLOCK) { multiplyRows(b, out, from, to); return; }
+            int mid = (from + (to - from) / 2 + BLOCK - 1) / BLOCK * BLOCK;
+            if (mid >= to) mid = from + (to - from) / 2;
+            invokeAll(new MultiplyTask(b, out, from, mid), new MultiplyTask(b, out, mid, to));
+        }
+    }
+
+    /** Dense plus sparse; same result as {@link SparseMatrix#add(Matrix)}. */
+    public Matrix add(SparseMatrix b) { return b.add(this); }
+    /** Dense times sparse; skips zero entries of this and walks only the nonzeros of {@code b}. */
+    public Matrix multiply(SparseMatrix b) {
+        if (EngineMetrics.isEnabled()) return timed(EngineMetrics.Op.MATRIX_MULTIPLY, null, () -> b.leftMultiply(this));
+        return b.leftMultiply(this);
+    }
+    public SparseMatrix toSparse() { return SparseMatrix.fromDense(this); }
+
+    /** LU factorization of this (square) matrix; keep it to solve several systems with the same A. */
+    public LUDecomposition lu() {
+        if (EngineMetrics.isEnabled()) return timed(EngineMetrics.Op.MATRIX_LU, null, () -> new LUDecomposition(this));
+        return new LUDecomposition(this);
+    }
+    public double determinant() { return lu().determinant(); }
+    public Matrix inverse() {
+        if (EngineMetrics.isEnabled()) return timed(EngineMetrics.Op.MATRIX_INVERSE, null, this::inverseImpl);
+        return inverseImpl();
+    }
+    private Matrix inverseImpl() {
+        LUDecomposition lu = lu();
+        if (lu.isSingular()) throw new RuntimeException("Singular");
+        return lu.inverse();
+    }
+    /** Solves this·X = b. */
+    public Matrix solve(Matrix b) {
+        if (EngineMetrics.isEnabled()) return timed(EngineMetrics.Op.MATRIX_SOLVE, b, () -> lu().solve(b));
+        return lu().solve(b);
+    }
+
+    private <T> T timed(EngineMetrics.Op op, Matrix b, java.util.function.Supplier<T> body) {
+        long t0 = System.nanoTime();
+        boolean ok = false;
+        try {
+            T r = body.get();
+            ok = true;
+            return r;
+        } finally {
+            EngineMetrics.record(op, t0, !ok, b == null ? rows+"x"+cols : rows+"x"+cols+", "+b.rows+"x"+b.cols);
+        }
+    }
+    @Override public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (int i=0;i<rows;i++) sb.append(Arrays.toString(Arrays.copyOfRange(a, i*cols, (i+1)*cols))).append("\n");
+        return sb.toString();
+    }
+}
@@ -0,0 +1,119 @@
+package calculator;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Translates a {@link CompiledExpression} opcode program into a tree of
+ * {@link MethodHandle} combinators of type {@code (double[])double}. Once the handle
+ * has been invoked often enough HotSpot customizes its lambda forms into bytecode, so
+ * calls such as {@code Math.sin} and {@code Math.pow} get inlined into one compiled body.
+ * The angle mode and exact combinatorics setting are fixed when the handle is built.
+ */
+final class MethodHandleCompiler {
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+    private static final MethodType UNARY = MethodType.methodType(double.class, double.class);
+    private static final MethodType BINARY = MethodType.methodType(double.class, double.class, double.class);
+    private static final MethodType PROGRAM = MethodType.methodType(double.class, double[].class);
+    private static final MethodHandle VAR_GETTER = MethodHandles.arrayElementGetter(double[].class);
+
+    private MethodHandleCompiler() {}
+
+    static MethodHandle compile(int[] code, double[] constants, boolean degrees, boolean exact) {
+        Deque<MethodHandle> st = new ArrayDeque<>();
+        // a reused subexpression is re-inlined at each use; once the tree is compiled into one
+        // body, C2 value-numbers the duplicate pure calls
+        Map<Integer, MethodHandle> temps = new HashMap<>();
+        for (int pc = 0; pc < code.length; pc++) {
+            int op = code[pc];
+            switch (op) {
+                case CompiledExpression.PUSH_CONST:
+                    st.push(MethodHandles.dropArguments(MethodHandles.constant(double.class, constants[code[++pc]]), 0, double[].class));
+                    break;
+                case CompiledExpression.PUSH_VAR:
+                    st.push(MethodHandles.insertArguments(VAR_GETTER, 1, code[++pc]));
+                    break;
+                case CompiledExpression.STORE_TEMP: temps.put(code[++pc], st.peek()); break;
+                case CompiledExpression.LOAD_TEMP: st.push(temps.get(code[++pc])); break;
+                case CompiledExpression.ADD: case CompiledExpression.SUB: case CompiledExpression.MUL:
+                case CompiledExpression.DIV: case CompiledExpression.MOD: case CompiledExpression.POW:
+                case CompiledExpression.NCR: case CompiledExpression.NPR: {
+                    MethodHandle b = st.pop(), a = st.pop();
+                    MethodHandle h = MethodHandles.filterArguments(binary(op, exact), 0, a, b);
+                    st.push(MethodHandles.permuteArguments(h, PROGRAM, 0, 0));
+                    break;
+                }
+                default:
+                    st.push(MethodHandles.filterReturnValue(st.pop(), unary(op, degrees)));
+            }
+        }
+        return st.pop();
+    }
+
+    private static MethodHandle unary(int op, boolean degrees) {
+        switch (op) {
+            case CompiledExpression.NEG: return local("neg", UNARY);
+            case CompiledExpression.SIN: return degrees ? local("sinDeg", UNARY) : math("sin");
+            case CompiledExpression.COS: return degrees ? local("cosDeg", UNARY) : math("cos");
+            case CompiledExpression.TAN: return degrees ? local("tanDeg", UNARY) : math("tan");
+            case CompiledExpression.ASIN: return degrees ? local("asinDeg", UNARY) : math("asin");
+            case CompiledExpression.ACOS: return degrees ? local("acosDeg", UNARY) : math("acos");
+            case CompiledExpression.ATAN: return degrees ? local("atanDeg", UNARY) : math("atan");
+            case CompiledExpression.LN: return math("log");
+            case CompiledExpression.LOG: return math("log10");
+            case CompiledExpression.SQRT: return math("sqrt");
+            case CompiledExpression.ABS: case CompiledExpression.MAG: return math("abs");
+            case CompiledExpression.EXP: return math("exp");
+            case CompiledExpression.CONJ: return MethodHandles.identity(double.class);
+            case CompiledExpression.FACT: return find(CalculatorEngine.class, "factorial", UNARY);
+            default: throw new RuntimeException("Unknown opcode "+op);
+        }
+    }
+
+    private static MethodHandle binary(int op, boolean exact) {
+        switch (op) {
+            case CompiledExpression.ADD: return local("add", BINARY);
+            case CompiledExpression.SUB: return local("sub", BINARY);
+            case CompiledExpression.MUL: return local("mul", BINARY);
+            case CompiledExpression.DIV: return local("div", BINARY);
+            case CompiledExpression.MOD: return local("mod", BINARY);
+            case CompiledExpression.POW: return find(Math.class, "pow", BINARY);
+            case CompiledExpression.NCR: return exact ? local("nCrExact", BINARY) : local("nCr", BINARY);
+            case CompiledExpression.NPR: return exact ? local("nPrExact", BINARY) : local("nPr", BINARY);
+            default: throw new RuntimeException("Unknown opcode "+op);
+        }
+    }
+
+    private static MethodHandle math(String name) { return find(Math.class, name, UNARY); }
+    private static MethodHandle local(String name, MethodType type) { return find(MethodHandleCompiler.class, name, type); }
+    private static MethodHandle find(Class<?> owner, String name, MethodType type) {
+        try {
+            return LOOKUP.findStatic(owner, name, type);
+        } catch (ReflectiveOperationException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    // Leaf operations; each mirrors the matching case in CompiledExpression.evaluate exactly
+    private static double neg(double x) { return -x; }
+    private static double add(double a, double b) { return a+b; }
+    private static double sub(double a, double b) { return a-b; }
+    private static double mul(double a, double b) { return a*b; }
+    private static double div(double a, double b) { if (b==0) throw new RuntimeException("Division by zero"); return a/b; }
+    private static double mod(double a, double b) { return a%b; }
+    private static double nCr(double a, double b) { return CalculatorEngine.nCr((int)Math.round(a), (int)Math.round(b), false); }
+    private static double nPr(double a, double b) { return CalculatorEngine.nPr((int)Math.round(a), (int)Math.round(b), false); }
+    private static double nCrExact(double a, double b) { return CalculatorEngine.nCr((int)Math.round(a), (int)Math.round(b), true); }
+    private static double nPrExact(double a, double b) { return CalculatorEngine.nPr((int)Math.round(a), (int)Math.round(b), true); }
+    private static double sinDeg(double x) { return Math.sin(Math.toRadians(x)); }
+    private static double cosDeg(double x) { return Math.cos(Math.toRadians(x)); }
+    private static double tanDeg(double x) { return Math.tan(Math.toRadians(x)); }
+    private static double asinDeg(double x) { return Math.toDegrees(Math.asin(x)); }
+    private static double acosDeg(double x) { return Math.toDegrees(Math.acos(x)); }
+    private static double atanDeg(double x) { return Math.toDegrees(Math.atan(x)); }
+}
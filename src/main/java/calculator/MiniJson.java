@@ -0,0 +1,148 @@
+package calculator;
+
+import java.util.*;
+
+/**
+ * Minimal JSON reader/writer for the HTTP service. Objects parse to {@link LinkedHashMap},
+ * arrays to {@link ArrayList}, numbers to {@link Double}; strings, booleans and null map to
+ * their Java counterparts. Malformed input throws a RuntimeException naming the offset.
+ */
+final class MiniJson {
+    private final String s;
+    private int i;
+
+    private MiniJson(String s) { this.s = s; }
+
+    static Object parse(String text) {
+        MiniJson p = new MiniJson(text);
+        Object v = p.value();
+        p.ws();
+        if (p.i != text.length()) throw p.error("Trailing characters");
+        return v;
+    }
+
+    private Object value() {
+        ws();
+        if (i >= s.length()) throw error("Unexpected end of JSON");
+        char c = s.charAt(i);
+        switch (c) {
+            case '{': return object();
+            case '[': return array();
+            case '"': return string();
+            case 't': return literal("true", Boolean.TRUE);
+            case 'f': return literal("false", Boolean.FALSE);
+            case 'n': return literal("null", null);
+            default:
+                if (c == '-' || (c >= '0' && c <= '9')) return number();
+                throw error("Unexpected character '" + c + "'");
+        }
+    }
+
+    private Map<String, Object> object() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        i++;
+        ws();
+        if (peek('}')) { i++; return m; }
+        while (true) {
+            ws();
+            if (!peek('"')) throw error("Expected object key");
+            String key = string();
+            ws();
+            expect(':');
+            m.put(key, value());
+            ws();
+            if (peek(',')) { i++; continue; }
+            expect('}');
+            return m;
+        }
+    }
+
+    private List<Object> array() {
+        List<Object> a = new ArrayList<>();
+        i++;
+        ws();
+        if (peek(']')) { i++; return a; }
+        while (true) {
+            a.add(value());
+            ws();
+            if (peek(',')) { i++; continue; }
+            expect(']');
+            return a;
+        }
+    }
+
+    private String string() {
+        StringBuilder sb = new StringBuilder();
+        i++;
+        while (i < s.length()) {
+            char c = s.charAt(i++);
+            if (c == '"') return sb.toString();
+            if (c != '\\') { sb.append(c); continue; }
+            if (i >= s.length()) break;
+            char e = s.charAt(i++);
+            switch (e) {
+                case 'n': sb.append('\n'); break;
+                case 't': sb.append('\t'); break;
+                case 'r': sb.append('\r'); break;
+                case 'b': sb.append('\b'); break;
+                case 'f': sb.append('\f'); break;
+                case 'u':
+                    if (i + 4 > s.length()) throw error("Bad unicode escape");
+                    sb.append((char) Integer.parseInt(s.substring(i, i + 4), 16));
+                    i += 4;
+                    break;
+                default: sb.append(e);
+            }
+        }
+        throw error("Unterminated string");
+    }
+
+    private Double number() {
+        int start = i;
+        while (i < s.length() && "+-0123456789.eE".indexOf(s.charAt(i)) >= 0) i++;
+        try {
+            return Double.valueOf(s.substring(start, i));
+        } catch (NumberFormatException e) {
+            throw error("Bad number");
+        }
+    }
+
+    private Object literal(String word, Object v) {
+        if (!s.startsWith(word, i)) throw error("Unexpected token");
+        i += word.length();
+        return v;
+    }
+
+    private void ws() { while (i < s.length() && Character.isWhitespace(s.charAt(i))) i++; }
+    private boolean peek(char c) { return i < s.length() && s.charAt(i) == c; }
+    private void expect(char c) {
+        if (!peek(c)) throw error("Expected '" + c + "'");
+        i++;
+    }
+    private RuntimeException error(String msg) { return new RuntimeException(msg + " at offset " + i); }
+
+    /** JSON string literal for {@code v}, quotes included. */
+    static String quote(String v) {
+        StringBuilder sb = new StringBuilder(v.length() + 2).append('"');
+        for (int k = 0; k < v.length(); k++) {
+            char c = v.charAt(k);
+            switch (c) {
+                case '"': sb.append("\\\""); break;
+                case '\\': sb.append("\\\\"); break;
+                case '\n': sb.append("\\n"); break;
+                case '\r': sb.append("\\r"); break;
+                case '\t': sb.append("\\t"); break;
+                default:
+                    if (c < 0x20) sb.append(String.format("\\u%04x", (int) c));
+                    else sb.append(c);
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    /** JSON number for {@code v}; non-finite values become strings, which JSON numbers cannot express. */
+    static String number(double v) {
+        if (Double.isNaN(v) || Double.isInfinite(v)) return quote(Double.toString(v));
+        return Double.toString(v);
+    }
+}
@@ -0,0 +1,131 @@
+package calculator;
+
+/**
+ * Mutable complex accumulator: every operation updates this instance in place and returns
+ * it, so chains such as {@code z.mul(z).add(c)} run without allocating. It is the arithmetic
+ * kernel behind {@link ComplexExpression}; use {@link ComplexNumber} for values that are shared.
+ * <p>
+ * Functions take principal branches, with the sign of a zero imaginary part choosing the
+ * side of a branch cut as in C99. For purely real arguments inside the real domain they
+ * defer to the corresponding {@link Math} call, so real results match the real engine bit for bit.
+ * {@link #div} follows {@link ComplexNumber#div} and does not check for zero.
+ */
+public final class MutableComplex {
+    public double re, im;
+
+    public MutableComplex() {}
+    public MutableComplex(double re, double im) { this.re = re; this.im = im; }
+
+    public MutableComplex set(double r, double i) { re = r; im = i; return this; }
+    public MutableComplex set(MutableComplex o) { re = o.re; im = o.im; return this; }
+    public MutableComplex set(ComplexNumber c) { re = c.re; im = c.im; return this; }
+
+    public MutableComplex add(double r, double i) { re += r; im += i; return this; }
+    public MutableComplex add(MutableComplex o) { return add(o.re, o.im); }
+    public MutableComplex sub(double r, double i) { re -= r; im -= i; return this; }
+    public MutableComplex sub(MutableComplex o) { return sub(o.re, o.im); }
+    public MutableComplex mul(double r, double i) { return set(re*r - im*i, re*i + im*r); }
+    public MutableComplex mul(MutableComplex o) { return mul(o.re, o.im); }
+    public MutableComplex div(double r, double i) {
+        if (i == 0) return set(re / r, im / r);
+        double d = r*r + i*i;
+        return set((re*r + im*i) / d, (im*r - re*i) / d);
+    }
+    public MutableComplex div(MutableComplex o) { return div(o.re, o.im); }
+    public MutableComplex scale(double k) { re *= k; im *= k; return this; }
+    /** Negates; a zero imaginary part stays +0 so that -4 lies above the branch cut, like a literal. */
+    public MutableComplex neg() { re = -re; im = 0.0 - im; return this; }
+    public MutableComplex conj() { im = -im; return this; }
+
+    public double mag() { return im == 0 ? Math.abs(re) : Math.hypot(re, im); }
+    public double arg() { return Math.atan2(im, re); }
+    public boolean isReal() { return im == 0; }
+
+    public MutableComplex sqrt() {
+        if (im == 0) return re >= 0 ? set(Math.sqrt(re), im) : set(0, Math.copySign(Math.sqrt(-re), im));
+        // cancellation-free form: t = sqrt((|z| + |re|) / 2)
+        double t = Math.sqrt((Math.hypot(re, im) + Math.abs(re)) / 2);
+        return re >= 0 ? set(t, im / (2*t)) : set(Math.abs(im) / (2*t), Math.copySign(t, im));
+    }
+
+    public MutableComplex ln() {
+        if (im == 0 && re >= 0) return set(Math.log(re), 0);
+        return set(Math.log(Math.hypot(re, im)), Math.atan2(im, re));
+    }
+
+    public MutableComplex log10() {
+        if (im == 0 && re >= 0) return set(Math.log10(re), 0);
+        return ln().scale(1 / Math.log(10));
+    }
+
+    public MutableComplex exp() {
+        if (im == 0) return set(Math.exp(re), 0);
+        double m = Math.exp(re);
+        return set(m * Math.cos(im), m * Math.sin(im));
+    }
+
+    /** Principal power; integer exponents up to 64 use repeated squaring so i^2 is exactly -1. */
+    public MutableComplex pow(double r, double i) {
+        if (i == 0 && im == 0 && (re >= 0 || r == Math.rint(r))) return set(Math.pow(re, r), 0);
+        if (i == 0 && r == Math.rint(r) && Math.abs(r) <= 64) {
+            double br = re, bi = im;
+            int n = (int) Math.abs(r);
+            set(1, 0);
+            while (n > 0) {
+                if ((n & 1) != 0) mul(br, bi);
+                double t = br*br - bi*bi; bi = 2*br*bi; br = t;
+                n >>= 1;
+            }
+            if (r >= 0) return this;
+            double pr = re, pi = im;
+            return set(1, 0).div(pr, pi);
+        }
+        if (re == 0 && im == 0) return (r == 0 && i == 0) ? set(1, 0) : set(0, 0);
+        return ln().mul(r, i).exp();
+    }
+
+    public MutableComplex sin() {
+        if (im == 0) return set(Math.sin(re), 0);
+        return set(Math.sin(re) * Math.cosh(im), Math.cos(re) * Math.sinh(im));
+    }
+
+    public MutableComplex cos() {
+        if (im == 0) return set(Math.cos(re), 0);
+        return set(Math.cos(re) * Math.cosh(im), -Math.sin(re) * Math.sinh(im));
+    }
+
+    public MutableComplex tan() {
+        if (im == 0) return set(Math.tan(re), 0);
+        // tan(a+bi) = (sin 2a + i sinh 2b) / (cos 2a + cosh 2b)
+        double d = Math.cos(2*re) + Math.cosh(2*im);
+        return set(Math.sin(2*re) / d, Math.sinh(2*im) / d);
+    }
+
+    /** asin z = -i ln(iz + sqrt(1 - z^2)). */
+    public MutableComplex asin() {
+        if (im == 0 && Math.abs(re) <= 1) return set(Math.asin(re), 0);
+        double a = re, b = im;
+        set(1 - (a*a - b*b), -2*a*b).sqrt().add(-b, a).ln();
+        return set(im, -re);
+    }
+
+    /** acos z = pi/2 - asin z. */
+    public MutableComplex acos() {
+        if (im == 0 && Math.abs(re) <= 1) return set(Math.acos(re), 0);
+        asin();
+        return set(Math.PI / 2 - re, -im);
+    }
+
+    /** atan z = (i/2) (ln(1 - iz) - ln(1 + iz)). */
+    public MutableComplex atan() {
+        if (im == 0) return set(Math.atan(re), 0);
+        double a = re, b = im;
+        double dr = Math.log(Math.hypot(1 + b, a)) - Math.log(Math.hypot(1 - b, a));
+        double di = Math.atan2(-a, 1 + b) - Math.atan2(a, 1 - b);
+        return set(-di / 2, dr / 2);
+    }
+
+    public ComplexNumber toComplexNumber() { return new ComplexNumber(re, im); }
+
+    @Override public String toString() { return toComplexNumber().toString(); }
+}
@@ -0,0 +1,270 @@
+package calculator;
+
+import java.util.*;
+
+/**
+ * Simplifies a {@link CompiledExpression.Program} before it is evaluated. The opcode program
+ * is raised to a tree, rewritten, and lowered again:
+ * <ul>
+ * <li>constant subtrees are folded by running them through the interpreter, so a folded value
+ *     is exactly what evaluation would have produced; trigonometric folds use the given angle
+ *     mode, and folds that would throw (division by zero, negative factorial) are left in place
+ *     so the error still surfaces at evaluation;</li>
+ * <li>identities that hold bit for bit under IEEE 754 are removed: {@code x*1}, {@code 1*x},
+ *     {@code x/1}, {@code x-0}, {@code x+(-0)}, {@code x^1} and {@code --x}. {@code x+0} is kept
+ *     because it turns -0 into +0;</li>
+ * <li>repeated subtrees such as {@code sin(x)*sin(x)} are computed once, stored in a temp with
+ *     {@link CompiledExpression#STORE_TEMP} and reloaded with {@link CompiledExpression#LOAD_TEMP}.</li>
+ * </ul>
+ * No reassociation is done, since that changes rounding. The rewriting passes recurse over the
+ * tree, so programs nested deeper than {@link #MAX_DEPTH} (such as a 20,000-term {@code x+x+…})
+ * are returned unoptimized rather than risking a stack overflow.
+ */
+final class Optimizer {
+    /** Deepest expression tree the passes will walk. */
+    static final int MAX_DEPTH = 256;
+
+    /** An optimized program, what was simplified, and whether a fold depended on the angle mode. */
+    static final class Result {
+        final CompiledExpression.Program program;
+        final List<String> report;
+        final boolean modeDependent;
+        Result(CompiledExpression.Program program, List<String> report, boolean modeDependent) {
+            this.program = program; this.report = report; this.modeDependent = modeDependent;
+        }
+    }
+
+    private static final class Node {
+        final int op;
+        final double value; // PUSH_CONST
+        final int slot;     // PUSH_VAR
+        final Node a, b;
+        private final int hash;
+        Node(int op, double value, int slot, Node a, Node b) {
+            this.op = op; this.value = value; this.slot = slot; this.a = a; this.b = b;
+            int h = op * 31 + Long.hashCode(Double.doubleToRawLongBits(value)) * 17 + slot;
+            if (a != null) h = h * 31 + a.hash;
+            if (b != null) h = h * 31 + b.hash;
+            hash = h;
+        }
+        boolean isConst() { return op == CompiledExpression.PUSH_CONST; }
+        boolean isConst(double v) { return isConst() && Double.doubleToRawLongBits(value) == Double.doubleToRawLongBits(v); }
+        // structural equality, so equal subtrees share one CSE entry
+        @Override public boolean equals(Object o) {
+            if (o == this) return true;
+            if (!(o instanceof Node)) return false;
+            Node n = (Node) o;
+            return hash == n.hash && op == n.op && slot == n.slot
+                    && Double.doubleToRawLongBits(value) == Double.doubleToRawLongBits(n.value)
+                    && Objects.equals(a, n.a) && Objects.equals(b, n.b);
+        }
+        @Override public int hashCode() { return hash; }
+    }
+
+    private final CompiledExpression.Program source;
+    private final boolean degrees;
+    private final List<String> report = new ArrayList<>();
+    private boolean modeDependent;
+    // lowering state
+    private final Map<Node, Integer> counts = new HashMap<>(), temps = new LinkedHashMap<>();
+    private final List<Double> constants = new ArrayList<>();
+    private int[] code = new int[16];
+    private int pc;
+
+    private Optimizer(CompiledExpression.Program source, boolean degrees) { this.source = source; this.degrees = degrees; }
+
+    static Result optimize(CompiledExpression.Program program, boolean degrees) {
+        Optimizer o = new Optimizer(program, degrees);
+        Node raised = o.raise();
+        if (raised == null) return new Result(program, Collections.emptyList(), false);
+        Node root = o.simplify(raised);
+        o.count(root);
+        // nothing folded, removed or repeated: keep the program as lowered
+        if (root == raised && !o.repeats()) return new Result(program, Collections.emptyList(), false);
+        return new Result(o.lower(root), Collections.unmodifiableList(o.report), o.modeDependent);
+    }
+
+    // the program as a tree, or null if it is deeper than MAX_DEPTH
+    private Node raise() {
+        Deque<Node> st = new ArrayDeque<>();
+        int[] code = source.code, depth = new int[source.maxDepth];
+        for (int pc = 0; pc < code.length; pc++) {
+            int op = code[pc];
+            switch (op) {
+                case CompiledExpression.PUSH_CONST: depth[st.size()] = 1; st.push(new Node(op, source.constants[code[++pc]], -1, null, null)); break;
+                case CompiledExpression.PUSH_VAR: depth[st.size()] = 1; st.push(new Node(op, 0, code[++pc], null, null)); break;
+                default:
+                    if (isBinary(op)) {
+                        Node b = st.pop(), a = st.pop();
+                        depth[st.size()] = Math.max(depth[st.size()], depth[st.size() + 1]) + 1;
+                        st.push(new Node(op, 0, -1, a, b));
+                    } else {
+                        depth[st.size() - 1]++;
+                        st.push(new Node(op, 0, -1, st.pop(), null));
+                    }
+                    if (depth[st.size() - 1] > MAX_DEPTH) return null;
+            }
+        }
+        return st.pop();
+    }
+
+    private Node simplify(Node n) {
+        if (n.a == null) return n;
+        Node a = simplify(n.a), b = n.b == null ? null : simplify(n.b);
+        if (a.isConst() && (b == null || b.isConst())) {
+            Node folded = fold(n.op, a, b);
+            if (folded != null) return folded;
+        }
+        Node s = identity(n.op, a, b);
+        if (s != null) {
+            report.add(render(new Node(n.op, 0, -1, a, b)) + " -> " + render(s));
+            return s;
+        }
+        return a == n.a && b == n.b ? n : new Node(n.op, 0, -1, a, b);
+    }
+
+    private Node fold(int op, Node a, Node b) {
+        // nCr/nPr past 2^53 depend on the exact combinatorics mode, which is read at evaluation time
+        boolean combinatoric = op == CompiledExpression.NCR || op == CompiledExpression.NPR;
+        int[] code = b == null ? new int[]{CompiledExpression.PUSH_CONST, 0, op} : new int[]{CompiledExpression.PUSH_CONST, 0, CompiledExpression.PUSH_CONST, 1, op};
+        double[] constants = b == null ? new double[]{a.value} : new double[]{a.value, b.value};
+        double v;
+        try {
+            v = CompiledExpression.interpret(new CompiledExpression.Program(code, constants, new String[0], 2), new double[0], degrees, false, new double[2]);
+        } catch (RuntimeException e) {
+            return null;
+        }
+        if (combinatoric && !(Math.abs(v) <= 0x1p53)) return null;
+        if (isAngular(op)) modeDependent = true;
+        Node folded = new Node(CompiledExpression.PUSH_CONST, v, -1, null, null);
+        report.add("folded " + render(new Node(op, 0, -1, a, b)) + " = " + render(folded) + (isAngular(op) ? (degrees ? " (degrees)" : " (radians)") : ""));
+        return folded;
+    }
+
+    // rewrites that are exact for every double, including -0, infinities and NaN
+    private static Node identity(int op, Node a, Node b) {
+        switch (op) {
+            case CompiledExpression.MUL:
+                if (b.isConst(1)) return a;
+                if (a.isConst(1)) return b;
+                return null;
+            case CompiledExpression.DIV: return b.isConst(1) ? a : null;
+            case CompiledExpression.SUB: return b.isConst(0.0) ? a : null;
+            case CompiledExpression.ADD:
+                if (b.isConst(-0.0)) return a;
+                if (a.isConst(-0.0)) return b;
+                return null;
+            case CompiledExpression.POW: return b.isConst(1) ? a : null;
+            case CompiledExpression.NEG: return a.op == CompiledExpression.NEG ? a.a : null;
+            default: return null;
+        }
+    }
+
+    // Emits postorder code; subtrees that occur more than once are stored after their first
+    // evaluation and reloaded afterwards. Stores whose temp is never loaded are dropped.
+    private CompiledExpression.Program lower(Node root) {
+        emit(root);
+        int[] loads = new int[temps.size()];
+        for (int i = 0; i < pc; i++) {
+            if (code[i] == CompiledExpression.LOAD_TEMP) loads[code[i+1]]++;
+            if (hasOperand(code[i])) i++;
+        }
+        // renumber the temps that are actually reloaded
+        int[] renumber = new int[loads.length];
+        int used = 0;
+        for (int t = 0; t < loads.length; t++) renumber[t] = loads[t] > 0 ? used++ : -1;
+        int[] out = new int[pc];
+        int n = 0, depth = 0, maxDepth = 0;
+        for (int i = 0; i < pc; i++) {
+            int op = code[i];
+            if (op == CompiledExpression.STORE_TEMP) {
+                int t = renumber[code[++i]];
+                if (t >= 0) { out[n++] = op; out[n++] = t; }
+                continue;
+            }
+            out[n++] = op;
+            if (hasOperand(op)) {
+                out[n++] = op == CompiledExpression.LOAD_TEMP ? renumber[code[++i]] : code[++i];
+                depth++;
+            } else if (isBinary(op)) {
+                depth--;
+            }
+            maxDepth = Math.max(maxDepth, depth);
+        }
+        for (Map.Entry<Node, Integer> t: temps.entrySet()) {
+            if (renumber[t.getValue()] >= 0) report.add("reused " + render(t.getKey()) + " (" + counts.get(t.getKey()) + " occurrences)");
+        }
+        double[] k = new double[constants.size()];
+        for (int i = 0; i < k.length; i++) k[i] = constants.get(i);
+        return new CompiledExpression.Program(Arrays.copyOf(out, n), k, source.slots, maxDepth, used);
+    }
+
+    private void emit(Node n) {
+        if (code.length < pc + 4) code = Arrays.copyOf(code, code.length * 2);
+        if (n.a == null) {
+            code[pc++] = n.op;
+            code[pc++] = n.isConst() ? constants.size() : n.slot;
+            if (n.isConst()) constants.add(n.value);
+            return;
+        }
+        Integer t = temps.get(n);
+        if (t != null) {
+            code[pc++] = CompiledExpression.LOAD_TEMP;
+            code[pc++] = t;
+            return;
+        }
+        emit(n.a);
+        if (n.b != null) emit(n.b);
+        if (code.length < pc + 4) code = Arrays.copyOf(code, code.length * 2);
+        code[pc++] = n.op;
+        if (counts.get(n) > 1) {
+            t = temps.size();
+            temps.put(n, t);
+            code[pc++] = CompiledExpression.STORE_TEMP;
+            code[pc++] = t;
+        }
+    }
+
+    private boolean repeats() {
+        for (int c: counts.values()) if (c > 1) return true;
+        return false;
+    }
+
+    private void count(Node n) {
+        if (n.a == null) return;
+        counts.merge(n, 1, Integer::sum);
+        count(n.a);
+        if (n.b != null) count(n.b);
+    }
+
+    private String render(Node n) {
+        if (n.op == CompiledExpression.PUSH_CONST) return Double.toString(n.value);
+        if (n.op == CompiledExpression.PUSH_VAR) return source.slots[n.slot];
+        if (n.op == CompiledExpression.NEG) return "-" + (n.a.isConst() ? "(" + render(n.a) + ")" : wrap(n.a));
+        if (isBinary(n.op) && n.op != CompiledExpression.NCR && n.op != CompiledExpression.NPR) {
+            return wrap(n.a) + "+-*/%^".charAt(n.op - CompiledExpression.ADD) + wrap(n.b);
+        }
+        return FUNCTION_NAMES.get(n.op) + "(" + render(n.a) + (n.b != null ? "," + render(n.b) : "") + ")";
+    }
+
+    private String wrap(Node n) {
+        return n.a == null || n.op != CompiledExpression.NEG && !isBinary(n.op) || n.op == CompiledExpression.NCR || n.op == CompiledExpression.NPR
+                ? render(n) : "(" + render(n) + ")";
+    }
+
+    private static final Map<Integer, String> FUNCTION_NAMES = new HashMap<>();
+    static {
+        for (String fn: new String[]{"sin","cos","tan","asin","acos","atan","ln","log","sqrt","abs","fact","nCr","nPr","exp","mag","conj"}) {
+            FUNCTION_NAMES.put(CompiledExpression.functionOpcode(fn), fn);
+        }
+    }
+
+    static boolean isBinary(int op) {
+        return (op >= CompiledExpression.ADD && op <= CompiledExpression.POW) || op == CompiledExpression.NCR || op == CompiledExpression.NPR;
+    }
+    static boolean hasOperand(int op) {
+        return op == CompiledExpression.PUSH_CONST || op == CompiledExpression.PUSH_VAR || op == CompiledExpression.PUSH_IMAG
+                || op == CompiledExpression.STORE_TEMP || op == CompiledExpression.LOAD_TEMP;
+    }
+    private static boolean isAngular(int op) { return op >= CompiledExpression.SIN && op <= CompiledExpression.ATAN; }
+}
@@ -0,0 +1,165 @@
+package calculator;
+
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Size-bounded cache of {@link CompiledExpression}s keyed by normalized expression text.
+ * The key space is split into lock-striped segments, each an access-ordered map, so
+ * concurrent lookups on different segments do not contend. Eviction is LRU; with
+ * {@link Policy#TINY_LFU} a newcomer only displaces the LRU victim if a small
+ * count-min frequency sketch says it has been requested more often (W-TinyLFU style
+ * admission), which keeps one-off expressions from flushing the hot set.
+ */
+public final class ParseCache {
+    public enum Policy { LRU, TINY_LFU }
+
+    /** Expressions longer than this are compiled but never cached, so key memory stays bounded. */
+    static final int MAX_KEY_LENGTH = 1024;
+
+    private final Segment[] segments;
+    private final int maxSize;
+    private final Policy policy;
+    private final LongAdder hits = new LongAdder(), misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder(), rejections = new LongAdder();
+
+    public ParseCache(int maxSize, Policy policy) {
+        if (maxSize <= 0) throw new RuntimeException("Cache size must be positive");
+        this.maxSize = maxSize;
+        this.policy = policy;
+        int n = 1;
+        while (n < 16 && n * 2 <= maxSize / 8) n *= 2;
+        segments = new Segment[n];
+        for (int i=0;i<n;i++) segments[i] = new Segment(maxSize / n + (i < maxSize % n ? 1 : 0));
+    }
+
+    /** Returns the cached program for {@code expr}, compiling and caching it on a miss. */
+    public CompiledExpression get(String expr, Function<String, CompiledExpression> compiler) {
+        String key = normalize(expr);
+        if (key.length() > MAX_KEY_LENGTH) { misses.increment(); return compiler.apply(expr); }
+        int h = spread(key.hashCode());
+        Segment seg = segments[h & (segments.length - 1)];
+        CompiledExpression ce = seg.get(key, h);
+        if (ce != null) { hits.increment(); return ce; }
+        misses.increment();
+        // compile outside the segment lock; a racing thread may compile the same text, which is harmless
+        ce = compiler.apply(expr);
+        seg.put(key, h, ce);
+        return ce;
+    }
+
+    public long hits() { return hits.sum(); }
+    public long misses() { return misses.sum(); }
+    public long evictions() { return evictions.sum(); }
+    /** Newcomers refused by TinyLFU admission. */
+    public long rejections() { return rejections.sum(); }
+    public int maxSize() { return maxSize; }
+    public Policy policy() { return policy; }
+    public int size() {
+        int n = 0;
+        for (Segment s: segments) n += s.size();
+        return n;
+    }
+    public void clear() { for (Segment s: segments) s.clear(); }
+
+    @Override public String toString() {
+        return String.format("ParseCache[%s size=%d/%d hits=%d misses=%d evictions=%d rejections=%d]",
+                policy, size(), maxSize, hits(), misses(), evictions(), rejections());
+    }
+
+    /**
+     * Canonical cache key: '×'/'÷' become '*'/'/', and whitespace is dropped except a single
+     * space between two word characters, where removing it would merge tokens ("1 2" vs "12").
+     */
+    static String normalize(String expr) {
+        StringBuilder sb = new StringBuilder(expr.length());
+        boolean pendingSpace = false;
+        for (int i=0;i<expr.length();i++) {
+            char c = expr.charAt(i);
+            if (Character.isWhitespace(c)) { pendingSpace = true; continue; }
+            if (c == '×') c = '*'; else if (c == '÷') c = '/';
+            if (pendingSpace && sb.length() > 0 && isWordChar(sb.charAt(sb.length() - 1)) && isWordChar(c)) sb.append(' ');
+            pendingSpace = false;
+            sb.append(c);
+        }
+        return sb.toString();
+    }
+    private static boolean isWordChar(char c) { return Character.isLetterOrDigit(c) || c == '_' || c == '.'; }
+
+    private static int spread(int h) { h ^= h >>> 16; h *= 0x45d9f3b; return h ^ (h >>> 16); }
+
+    private final class Segment {
+        private final int capacity;
+        private final LinkedHashMap<String, CompiledExpression> map;
+        private final FrequencySketch sketch;
+
+        Segment(int capacity) {
+            this.capacity = Math.max(1, capacity);
+            this.map = new LinkedHashMap<>(16, 0.75f, true);
+            this.sketch = policy == Policy.TINY_LFU ? new FrequencySketch(this.capacity) : null;
+        }
+
+        synchronized CompiledExpression get(String key, int h) {
+            if (sketch != null) sketch.increment(h);
+            return map.get(key);
+        }
+
+        synchronized void put(String key, int h, CompiledExpression ce) {
+            if (map.containsKey(key)) return;
+            if (map.size() >= capacity) {
+                Map.Entry<String, CompiledExpression> victim = map.entrySet().iterator().next();
+                if (sketch != null && sketch.frequency(h) <= sketch.frequency(spread(victim.getKey().hashCode()))) {
+                    rejections.increment();
+                    return;
+                }
+                map.remove(victim.getKey());
+                evictions.increment();
+            }
+            map.put(key, ce);
+        }
+
+        synchronized int size() { return map.size(); }
+        synchronized void clear() { map.clear(); if (sketch != null) sketch.reset(); }
+    }
+
+    /** 4-row count-min sketch of 4-bit-saturating counters, halved periodically so old popularity decays. */
+    private static final class FrequencySketch {
+        private static final int[] SEEDS = { 0x9e3779b9, 0x85ebca6b, 0xc2b2ae35, 0x27d4eb2f };
+        private final int[] table;
+        private final int mask, sampleSize;
+        private int additions;
+
+        FrequencySketch(int capacity) {
+            int width = Integer.highestOneBit(Math.max(16, capacity * 4) - 1) << 1;
+            table = new int[width * SEEDS.length];
+            mask = width - 1;
+            sampleSize = 10 * capacity;
+        }
+
+        private int index(int h, int row) {
+            int x = (h ^ SEEDS[row]) * 0x2c1b3c6d;
+            x ^= x >>> 15;
+            return row * (mask + 1) + (x & mask);
+        }
+
+        void increment(int h) {
+            for (int r=0;r<SEEDS.length;r++) {
+                int i = index(h, r);
+                if (table[i] < 15) table[i]++;
+            }
+            if (++additions >= sampleSize) {
+                for (int i=0;i<table.length;i++) table[i] >>>= 1;
+                additions /= 2;
+            }
+        }
+
+        int frequency(int h) {
+            int f = Integer.MAX_VALUE;
+            for (int r=0;r<SEEDS.length;r++) f = Math.min(f, table[index(h, r)]);
+            return f;
+        }
+
+        void reset() { Arrays.fill(table, 0); additions = 0; }
+    }
+}
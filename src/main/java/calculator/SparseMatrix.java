@@ -0,0 +1,394 @@
+package calculator;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Sparse matrix in compressed sparse row (CSR) form: the nonzeros of row i are
+ * {@code values[rowPtr[i]..rowPtr[i+1])} with column indices, ascending, in {@code colIdx}.
+ * Memory is proportional to the number of nonzeros, so systems far too large for the dense
+ * {@link Matrix} can be built. {@link #transpose} gives the CSC layout of the same matrix
+ * (as the CSR of its transpose).
+ * <p>
+ * Products with a vector, a dense {@link Matrix} (on either side) or another sparse matrix, and
+ * sums with a dense matrix, split the output rows into bands of roughly equal work and run them
+ * on the common fork-join pool once the work is large enough. Each output row is computed by one
+ * task in a fixed order, so parallel and sequential results are bit-identical. {@link #solve} is a Jacobi-preconditioned
+ * conjugate gradient for symmetric positive-definite systems.
+ */
+public final class SparseMatrix {
+    /** Nonzeros (multiply-adds) above which products fan out over the fork-join pool. */
+    static final int PARALLEL_THRESHOLD = 1 << 16;
+    /** Smallest band of nonzeros handed to one task. */
+    static final int MIN_TASK_NNZ = 1 << 13;
+    /** Default conjugate-gradient tolerance on ||b - Ax|| / ||b||. */
+    public static final double DEFAULT_TOLERANCE = 1e-10;
+
+    public final int rows, cols;
+    private final int[] rowPtr, colIdx;
+    private final double[] values;
+
+    private SparseMatrix(int rows, int cols, int[] rowPtr, int[] colIdx, double[] values) {
+        this.rows = rows; this.cols = cols; this.rowPtr = rowPtr; this.colIdx = colIdx; this.values = values;
+    }
+
+    /**
+     * Builds a matrix from coordinate triplets in any order; duplicate (i, j) entries are summed
+     * and explicit zeros are dropped.
+     */
+    public static SparseMatrix fromTriplets(int rows, int cols, int[] ri, int[] ci, double[] v) {
+        if (ri.length != ci.length || ri.length != v.length) throw new RuntimeException("Triplet arrays differ in length");
+        int[] ptr = new int[rows + 1];
+        for (int k=0;k<ri.length;k++) {
+            if (ri[k] < 0 || ri[k] >= rows || ci[k] < 0 || ci[k] >= cols) throw new RuntimeException("Entry ("+ri[k]+","+ci[k]+") outside "+rows+"x"+cols);
+            ptr[ri[k] + 1]++;
+        }
+        for (int i=0;i<rows;i++) ptr[i+1] += ptr[i];
+        // bucket by row, then sort and merge each row by column
+        int[] next = Arrays.copyOf(ptr, rows), col = new int[ri.length];
+        double[] val = new double[ri.length];
+        for (int k=0;k<ri.length;k++) { int p = next[ri[k]]++; col[p] = ci[k]; val[p] = v[k]; }
+        int[] outPtr = new int[rows + 1];
+        int n = 0;
+        long[] keyed = new long[0];
+        for (int i=0;i<rows;i++) {
+            int from = ptr[i], len = ptr[i+1] - from;
+            if (keyed.length < len) keyed = new long[Math.max(len, keyed.length * 2)];
+            for (int k=0;k<len;k++) keyed[k] = (long) col[from+k] << 32 | k;
+            Arrays.sort(keyed, 0, len);
+            double[] rowVal = Arrays.copyOfRange(val, from, from + len);
+            for (int k=0;k<len;) {
+                int c = (int) (keyed[k] >>> 32);
+                double s = 0;
+                for (; k<len && (int) (keyed[k] >>> 32) == c; k++) s += rowVal[(int) keyed[k]];
+                if (s != 0) { col[n] = c; val[n++] = s; }
+            }
+            outPtr[i+1] = n;
+        }
+        return new SparseMatrix(rows, cols, outPtr, Arrays.copyOf(col, n), Arrays.copyOf(val, n));
+    }
+
+    /** The nonzero entries of a dense matrix. */
+    public static SparseMatrix fromDense(Matrix m) {
+        double[] a = m.toRowMajor();
+        int nnz = 0;
+        for (double x: a) if (x != 0) nnz++;
+        int[] ptr = new int[m.rows + 1], col = new int[nnz];
+        double[] val = new double[nnz];
+        int n = 0;
+        for (int i=0;i<m.rows;i++) {
+            for (int j=0;j<m.cols;j++) {
+                double x = a[i*m.cols+j];
+                if (x != 0) { col[n] = j; val[n++] = x; }
+            }
+            ptr[i+1] = n;
+        }
+        return new SparseMatrix(m.rows, m.cols, ptr, col, val);
+    }
+
+    public static SparseMatrix identity(int n) {
+        int[] ptr = new int[n + 1], col = new int[n];
+        double[] val = new double[n];
+        for (int i=0;i<n;i++) { ptr[i+1] = i + 1; col[i] = i; val[i] = 1; }
+        return new SparseMatrix(n, n, ptr, col, val);
+    }
+
+    public int nonZeros() { return rowPtr[rows]; }
+    /** Bytes held by the CSR arrays. */
+    public long memoryBytes() { return 4L * rowPtr.length + 12L * colIdx.length; }
+
+    public double get(int i, int j) {
+        int k = Arrays.binarySearch(colIdx, rowPtr[i], rowPtr[i+1], j);
+        return k >= 0 ? values[k] : 0;
+    }
+
+    public Matrix toDense() {
+        double[] out = new double[rows*cols];
+        for (int i=0;i<rows;i++) for (int k=rowPtr[i];k<rowPtr[i+1];k++) out[i*cols+colIdx[k]] = values[k];
+        return Matrix.wrap(rows, cols, out);
+    }
+
+    /** The transpose, built with a counting sort over columns; equivalently this matrix in CSC form. */
+    public SparseMatrix transpose() {
+        int nnz = nonZeros();
+        int[] ptr = new int[cols + 1], col = new int[nnz];
+        double[] val = new double[nnz];
+        for (int k=0;k<nnz;k++) ptr[colIdx[k] + 1]++;
+        for (int j=0;j<cols;j++) ptr[j+1] += ptr[j];
+        int[] next = Arrays.copyOf(ptr, cols);
+        for (int i=0;i<rows;i++) {
+            for (int k=rowPtr[i];k<rowPtr[i+1];k++) { int p = next[colIdx[k]]++; col[p] = i; val[p] = values[k]; }
+        }
+        return new SparseMatrix(cols, rows, ptr, col, val);
+    }
+
+    public SparseMatrix add(SparseMatrix b) {
+        if (EngineMetrics.isEnabled()) return timed(EngineMetrics.Op.MATRIX_ADD, b.rows, b.cols, () -> addImpl(b));
+        return addImpl(b);
+    }
+    // merges the sorted column lists row by row; cancelling entries are dropped
+    private SparseMatrix addImpl(SparseMatrix b) {
+        if (rows!=b.rows || cols!=b.cols) throw new RuntimeException("Dimension mismatch");
+        int[] ptr = new int[rows + 1], col = new int[nonZeros() + b.nonZeros()];
+        double[] val = new double[col.length];
+        int n = 0;
+        for (int i=0;i<rows;i++) {
+            int p = rowPtr[i], pe = rowPtr[i+1], q = b.rowPtr[i], qe = b.rowPtr[i+1];
+            while (p < pe || q < qe) {
+                int cp = p < pe ? colIdx[p] : Integer.MAX_VALUE, cq = q < qe ? b.colIdx[q] : Integer.MAX_VALUE;
+                int c = Math.min(cp, cq);
+                double s = (cp == c ? values[p++] : 0) + (cq == c ? b.values[q++] : 0);
+                if (s != 0) { col[n] = c; val[n++] = s; }
+            }
+            ptr[i+1] = n;
+        }
+        return new SparseMatrix(rows, cols, ptr, Arrays.copyOf(col, n), Arrays.copyOf(val, n));
+    }
+
+    /** Sparse plus dense is dense. */
+    public Matrix add(Matrix b) {
+        if (EngineMetrics.isEnabled()) return timed(EngineMetrics.Op.MATRIX_ADD, b.rows, b.cols, () -> addImpl(b));
+        return addImpl(b);
+    }
+    private Matrix addImpl(Matrix b) {
+        if (rows!=b.rows || cols!=b.cols) throw new RuntimeException("Dimension mismatch");
+        double[] out = b.toRowMajor();
+        forEachBand(nonZeros(), (from, to) -> {
+            for (int i=from;i<to;i++) for (int k=rowPtr[i];k<rowPtr[i+1];k++) out[i*cols+colIdx[k]] += values[k];
+        });
+        return Matrix.wrap(rows, cols, out);
+    }
+
+    /** y = A·x. */
+    public double[] multiply(double[] x) {
+        double[] y = new double[rows];
+        multiply(x, y);
+        return y;
+    }
+
+    /** y = A·x into a caller-supplied {@code y}, which must not alias {@code x}. */
+    public void multiply(double[] x, double[] y) {
+        if (EngineMetrics.isEnabled()) { timed(EngineMetrics.Op.MATRIX_MULTIPLY, x.length, 1, () -> { multiplyImpl(x, y); return y; }); return; }
+        multiplyImpl(x, y);
+    }
+    private void multiplyImpl(double[] x, double[] y) {
+        if (x.length != cols || y.length != rows) throw new RuntimeException("Dimension mismatch");
+        forEachBand(nonZeros(), (from, to) -> multiplyRows(x, y, from, to));
+    }
+    // single-threaded SpMV regardless of size, the baseline for the row-partitioned kernel
+    void multiplySequential(double[] x, double[] y) {
+        if (x.length != cols || y.length != rows) throw new RuntimeException("Dimension mismatch");
+        multiplyRows(x, y, 0, rows);
+    }
+    private void multiplyRows(double[] x, double[] y, int from, int to) {
+        int[] ptr = rowPtr, col = colIdx;
+        double[] val = values;
+        for (int i=from;i<to;i++) {
+            double s = 0;
+            for (int k=ptr[i];k<ptr[i+1];k++) s += val[k]*x[col[k]];
+            y[i] = s;
+        }
+    }
+
+    /** Sparse times dense; each output row accumulates the rows of {@code b} selected by this row's nonzeros. */
+    public Matrix multiply(Matrix b) {
+        if (EngineMetrics.isEnabled()) return timed(EngineMetrics.Op.MATRIX_MULTIPLY, b.rows, b.cols, () -> multiplyImpl(b));
+        return multiplyImpl(b);
+    }
+    private Matrix multiplyImpl(Matrix b) {
+        if (cols!=b.rows) throw new RuntimeException("Dimension mismatch");
+        int n = b.cols;
+        double[] ba = b.toRowMajor(), out = new double[rows*n];
+        forEachBand((long) nonZeros() * n, (from, to) -> {
+            for (int i=from;i<to;i++) {
+                int oRow = i*n;
+                for (int k=rowPtr[i];k<rowPtr[i+1];k++) {
+                    double aik = values[k];
+                    int bRow = colIdx[k]*n;
+                    for (int j=0;j<n;j++) out[oRow+j] += aik*ba[bRow+j];
+                }
+            }
+        });
+        return Matrix.wrap(rows, n, out);
+    }
+
+    // a·this for dense a, backing Matrix.multiply(SparseMatrix): row i of a scales the rows of this.
+    // Output rows are rows of a, each costing at most one pass over this, so they split evenly
+    Matrix leftMultiply(Matrix a) {
+        if (a.cols!=rows) throw new RuntimeException("Dimension mismatch");
+        double[] aa = a.toRowMajor(), out = new double[a.rows*cols];
+        int m = rows, n = cols;
+        long rowCost = (long) m + nonZeros();
+        forEachBand(a.rows, null, rowCost, a.rows * rowCost, (from, to) -> {
+            for (int i=from;i<to;i++) {
+                for (int k=0;k<m;k++) {
+                    double aik = aa[i*m+k];
+                    if (aik == 0) continue;
+                    for (int q=rowPtr[k];q<rowPtr[k+1];q++) out[i*n+colIdx[q]] += aik*values[q];
+                }
+            }
+        });
+        return Matrix.wrap(a.rows, n, out);
+    }
+
+    /**
+     * Sparse times sparse (Gustavson's row-by-row algorithm). Each band of rows accumulates into
+     * a dense scratch row and emits its own CSR piece; the pieces are concatenated at the end.
+     */
+    public SparseMatrix multiply(SparseMatrix b) {
+        if (EngineMetrics.isEnabled()) return timed(EngineMetrics.Op.MATRIX_MULTIPLY, b.rows, b.cols, () -> multiplyImpl(b));
+        return multiplyImpl(b);
+    }
+    private SparseMatrix multiplyImpl(SparseMatrix b) {
+        if (cols!=b.rows) throw new RuntimeException("Dimension mismatch");
+        long work = 0;
+        for (int k=0;k<nonZeros();k++) work += b.rowPtr[colIdx[k]+1] - b.rowPtr[colIdx[k]];
+        int[] counts = new int[rows];
+        int[][] bandCol = new int[rows][];
+        double[][] bandVal = new double[rows][];
+        forEachBand(work, (from, to) -> {
+            double[] acc = new double[b.cols];
+            int[] mark = new int[b.cols], touched = new int[b.cols];
+            Arrays.fill(mark, -1);
+            int cap = 16, n = 0;
+            int[] col = new int[cap];
+            double[] val = new double[cap];
+            for (int i=from;i<to;i++) {
+                int t = 0;
+                for (int k=rowPtr[i];k<rowPtr[i+1];k++) {
+                    double aik = values[k];
+                    for (int q=b.rowPtr[colIdx[k]];q<b.rowPtr[colIdx[k]+1];q++) {
+                        int c = b.colIdx[q];
+                        if (mark[c] != i) { mark[c] = i; acc[c] = 0; touched[t++] = c; }
+                        acc[c] += aik*b.values[q];
+                    }
+                }
+                Arrays.sort(touched, 0, t);
+                if (n + t > cap) { cap = Math.max(n + t, cap * 2); col = Arrays.copyOf(col, cap); val = Arrays.copyOf(val, cap); }
+                int start = n;
+                for (int k=0;k<t;k++) if (acc[touched[k]] != 0) { col[n] = touched[k]; val[n++] = acc[touched[k]]; }
+                counts[i] = n - start;
+            }
+            bandCol[from] = Arrays.copyOf(col, n);
+            bandVal[from] = Arrays.copyOf(val, n);
+        });
+        int[] ptr = new int[rows + 1];
+        for (int i=0;i<rows;i++) ptr[i+1] = ptr[i] + counts[i];
+        int[] col = new int[ptr[rows]];
+        double[] val = new double[ptr[rows]];
+        for (int i=0;i<rows;i++) {
+            if (bandCol[i] == null) continue;
+            System.arraycopy(bandCol[i], 0, col, ptr[i], bandCol[i].length);
+            System.arraycopy(bandVal[i], 0, val, ptr[i], bandVal[i].length);
+        }
+        return new SparseMatrix(rows, b.cols, ptr, col, val);
+    }
+
+    /** Solves A·x = b by conjugate gradient with the default tolerance and at most 10·n iterations. */
+    public double[] solve(double[] b) {
+        return solve(b, DEFAULT_TOLERANCE, 10 * rows);
+    }
+
+    /**
+     * Jacobi-preconditioned conjugate gradient for a symmetric positive-definite A, starting from
+     * zero and stopping once ||b - Ax|| &le; tolerance·||b||. Throws if the diagonal is not
+     * positive or the iteration limit is reached; symmetry is not checked.
+     */
+    public double[] solve(double[] b, double tolerance, int maxIterations) {
+        if (EngineMetrics.isEnabled()) return timed(EngineMetrics.Op.MATRIX_SOLVE, b.length, 1, () -> solveImpl(b, tolerance, maxIterations));
+        return solveImpl(b, tolerance, maxIterations);
+    }
+    private double[] solveImpl(double[] b, double tolerance, int maxIterations) {
+        if (rows!=cols) throw new RuntimeException("Not square");
+        if (b.length != rows) throw new RuntimeException("Dimension mismatch");
+        int n = rows;
+        double[] invDiag = new double[n];
+        for (int i=0;i<n;i++) {
+            double d = get(i, i);
+            if (!(d > 0)) throw new RuntimeException("Not positive definite (diagonal "+i+" is "+d+")");
+            invDiag[i] = 1 / d;
+        }
+        double[] x = new double[n], r = b.clone(), z = new double[n], p = new double[n], ap = new double[n];
+        double bNorm = Math.sqrt(dot(b, b));
+        if (bNorm == 0) return x;
+        for (int i=0;i<n;i++) p[i] = z[i] = invDiag[i]*r[i];
+        double rz = dot(r, z);
+        for (int it=0;it<maxIterations;it++) {
+            multiplyImpl(p, ap);
+            double pap = dot(p, ap);
+            if (!(pap > 0)) throw new RuntimeException("Not positive definite");
+            double alpha = rz / pap, rr = 0;
+            for (int i=0;i<n;i++) {
+                x[i] += alpha*p[i];
+                r[i] -= alpha*ap[i];
+                rr += r[i]*r[i];
+            }
+            if (Math.sqrt(rr) <= tolerance*bNorm) return x;
+            for (int i=0;i<n;i++) z[i] = invDiag[i]*r[i];
+            double rzNext = dot(r, z), beta = rzNext / rz;
+            rz = rzNext;
+            for (int i=0;i<n;i++) p[i] = z[i] + beta*p[i];
+        }
+        throw new RuntimeException("Conjugate gradient did not converge in "+maxIterations+" iterations");
+    }
+
+    private static double dot(double[] a, double[] b) {
+        double s = 0;
+        for (int i=0;i<a.length;i++) s += a[i]*b[i];
+        return s;
+    }
+
+    private interface RowBand { void run(int from, int to); }
+
+    // runs body over all rows, split into bands of similar nonzero count when work is large
+    private void forEachBand(long work, RowBand body) { forEachBand(rows, rowPtr, 0, work, body); }
+
+    // runs body over rows [0, n); a band [from, to) costs prefix[to] - prefix[from], or
+    // (to - from) * rowCost when prefix is null
+    private static void forEachBand(int n, int[] prefix, long rowCost, long work, RowBand body) {
+        if (work < PARALLEL_THRESHOLD || n < 2 || ForkJoinPool.getCommonPoolParallelism() <= 1) { body.run(0, n); return; }
+        ForkJoinPool.commonPool().invoke(new BandTask(body, prefix, rowCost, 0, n));
+    }
+
+    @SuppressWarnings("serial") // fork-join tasks are never serialized
+    private static final class BandTask extends RecursiveAction {
+        private final RowBand body; private final int[] prefix; private final long rowCost; private final int from, to;
+        BandTask(RowBand body, int[] prefix, long rowCost, int from, int to) {
+            this.body = body; this.prefix = prefix; this.rowCost = rowCost; this.from = from; this.to = to;
+        }
+        @Override protected void compute() {
+            long cost = prefix != null ? prefix[to] - prefix[from] : (to - from) * rowCost;
+            if (to - from < 2 || cost <= MIN_TASK_NNZ) { body.run(from, to); return; }
+            int mid = from + (to - from) / 2;
+            if (prefix != null) {
+                // split at the row where half the band's nonzeros have been passed
+                mid = Arrays.binarySearch(prefix, from, to, prefix[from] + (int) (cost / 2));
+                if (mid < 0) mid = -mid - 1;
+                mid = Math.max(from + 1, Math.min(mid, to - 1));
+            }
+            invokeAll(new BandTask(body, prefix, rowCost, from, mid), new BandTask(body, prefix, rowCost, mid, to));
+        }
+    }
+
+    private <T> T timed(EngineMetrics.Op op, int bRows, int bCols, java.util.function.Supplier<T> body) {
+        long t0 = System.nanoTime();
+        boolean ok = false;
+        try {
+            T r = body.get();
+            ok = true;
+            return r;
+        } finally {
+            EngineMetrics.record(op, t0, !ok, "sparse "+rows+"x"+cols+" nnz="+nonZeros()+", "+bRows+"x"+bCols);
+        }
+    }
+
+    @Override public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(rows).append('x').append(cols).append(", ").append(nonZeros()).append(" nonzeros\n");
+        for (int i=0;i<rows;i++) {
+            for (int k=rowPtr[i];k<rowPtr[i+1];k++) sb.append('(').append(i).append(',').append(colIdx[k]).append(") ").append(values[k]).append('\n');
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,21 @@
+package calculator;
+
+/** A lexical token produced by {@link Lexer}; {@code column} is the 1-based position in the source text. */
+public final class Token {
+    public enum Kind { NUMBER, VARIABLE, FUNCTION, OPERATOR, UNARY_MINUS, LPAREN, RPAREN, COMMA, IMAGINARY }
+
+    public final Kind kind;
+    public final String text;
+    /** Parsed value of NUMBER tokens, and the imaginary coefficient of IMAGINARY ones. */
+    public final double value;
+    public final int column;
+
+    Token(Kind kind, String text, double value, int column) {
+        this.kind = kind; this.text = text; this.value = value; this.column = column;
+    }
+
+    /** The operator character for OPERATOR tokens ('×' and '÷' are already normalized to '*' and '/'). */
+    public char op() { return text.charAt(0); }
+
+    @Override public String toString() { return text; }
+}
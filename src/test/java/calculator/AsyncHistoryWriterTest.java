@@ -0,0 +1,54 @@
+package calculator;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class AsyncHistoryWriterTest {
+    @TempDir Path dir;
+
+    /** Every append that returns normally while close() runs concurrently reaches the store; the rest are rejected. */
+    @Test
+    void closeRacingAppendsLosesNothing() throws Exception {
+        for (AsyncHistoryWriter.Backpressure policy: AsyncHistoryWriter.Backpressure.values()) {
+            HistoryStore store = new HistoryStore(dir.resolve("history-" + policy));
+            AsyncHistoryWriter w = new AsyncHistoryWriter(store, new AsyncHistoryWriter.Options().queueCapacity(16).backpressure(policy));
+            AtomicLong accepted = new AtomicLong();
+            CountDownLatch started = new CountDownLatch(4);
+            Thread[] producers = new Thread[4];
+            for (int t = 0; t < producers.length; t++) {
+                producers[t] = new Thread(() -> {
+                    started.countDown();
+                    try {
+                        while (true) { w.append(0, "x", "1"); accepted.incrementAndGet(); }
+                    } catch (RuntimeException e) {
+                        // closed, or the queue was full under FAIL; stop either way
+                    }
+                });
+                producers[t].start();
+            }
+            started.await();
+            Thread.sleep(20);
+            w.close();
+            for (Thread p: producers) p.join();
+            assertEquals(accepted.get() - w.dropped(), store.size(), policy.toString());
+            store.close();
+        }
+    }
+
+    @Test
+    void appendAndFlushAfterCloseFail() {
+        try (HistoryStore store = new HistoryStore(dir.resolve("history"))) {
+            AsyncHistoryWriter w = new AsyncHistoryWriter(store, new AsyncHistoryWriter.Options());
+            w.append(0, "a", "1");
+            w.close();
+            assertThrows(RuntimeException.class, () -> w.append(0, "b", "2"));
+            assertThrows(RuntimeException.class, w::flush);
+            assertEquals(1, store.size());
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package calculator;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.*;
+import org.junit.jupiter.api.Test;
+
+class BatchCliTest {
+    /** A line that fails with an Error is reported in place and the rest of the batch still runs. */
+    @Test
+    void errorsAreReportedPerLineInOrder() throws IOException {
+        CalculatorEngine engine = new CalculatorEngine() {
+            @Override public double evaluate(String expr) {
+                if (expr.equals("overflow")) throw new StackOverflowError();
+                if (expr.equals("assert")) throw new AssertionError("boom");
+                return super.evaluate(expr);
+            }
+        };
+        StringWriter out = new StringWriter();
+        BatchCli.Stats stats = BatchCli.run(engine, new BufferedReader(new StringReader("1+1\noverflow\n2*3\nassert\n1/0\n4\n")), out, 2, 4);
+        assertEquals("2\nERROR 2: Expression too deeply nested\n6\nERROR 4: java.lang.AssertionError: boom\nERROR 5: Division by zero\n4\n", out.toString());
+        assertEquals(6, stats.lines);
+        assertEquals(3, stats.errors);
+    }
+}
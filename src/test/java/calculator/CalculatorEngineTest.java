@@ -0,0 +1,49 @@
+package calculator;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+
+class CalculatorEngineTest {
+    /**
+     * One shared engine and compiled expression under several threads, each with its own context
+     * and angle mode: every result must match its thread's bindings and no memory update may be
+     * lost. Uses at least 4 threads so interleaving happens even on a single core.
+     */
+    @Test
+    void sharedEngineKeepsPerContextBindings() throws InterruptedException {
+        CalculatorEngine engine = new CalculatorEngine();
+        engine.setVariable("a", 2); engine.setVariable("b", 1);
+        CompiledExpression ce = engine.compile("a*sin(x)+b*M");
+        engine.storeMemory(0);
+        int threads = Math.max(4, Runtime.getRuntime().availableProcessors()), perThread = 200_000;
+        AtomicLong errors = new AtomicLong();
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            int id = t;
+            workers[t] = new Thread(() -> {
+                EvaluationContext ctx = engine.newContext();
+                ctx.setVariable("M", 0);
+                ctx.setDegrees(id % 2 == 1);
+                double x = id + 0.25;
+                ctx.setVariable("x", x);
+                double expected = 2 * Math.sin(id % 2 == 1 ? Math.toRadians(x) : x);
+                try { start.await(); } catch (InterruptedException e) { return; }
+                for (int i = 0; i < perThread; i++) {
+                    if (ce.evaluate(ctx) != expected) errors.incrementAndGet();
+                    // the engine's own scope must never see a context's bindings
+                    if ((i & 255) == 0 && engine.evaluate("x") != 0) errors.incrementAndGet();
+                    if ((i & 1023) == 0) engine.addToMemory(1);
+                }
+            });
+            workers[t].start();
+        }
+        start.countDown();
+        for (Thread w: workers) w.join();
+        assertEquals(0, errors.get(), "wrong results");
+        assertEquals((long) threads * ((perThread + 1023) / 1024), engine.recallMemory(), "memory updates");
+    }
+}
@@ -0,0 +1,66 @@
+package calculator;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.math.BigInteger;
+import org.junit.jupiter.api.Test;
+
+/**
+ * fact/nCr/nPr against BigInteger for n &le; 400: exact wherever the result fits a long, within
+ * 1e-11 relative elsewhere, and correctly rounded everywhere in exact mode.
+ */
+class CombinatoricsTest {
+    @Test
+    void factorialMatchesBigInteger() {
+        for (int n = 0; n <= 300; n++) assertEquals(Reference.factorial(n), Combinatorics.factorial(n), "fact(" + n + ")");
+    }
+
+    @Test
+    void fastPathsAreExactInLongRangeAndCloseBeyond() {
+        double maxRel = 0;
+        for (int n = 0; n <= 400; n++) {
+            for (int k = 0; k <= n; k++) {
+                BigInteger c = Reference.binomial(n, k);
+                double p = Reference.permutations(n, k), ec = c.doubleValue();
+                double gc = Combinatorics.nCr(n, k, false), gp = Combinatorics.nPr(n, k, false);
+                if (c.bitLength() < 63) assertEquals(ec, gc, "nCr(" + n + "," + k + ")");
+                if (p < 0x1p63) assertEquals(p, gp, "nPr(" + n + "," + k + ")");
+                if (!Double.isInfinite(ec)) maxRel = Math.max(maxRel, Math.abs(gc - ec) / ec);
+                if (!Double.isInfinite(p)) maxRel = Math.max(maxRel, Math.abs(gp - p) / p);
+            }
+        }
+        assertTrue(maxRel < 1e-11, String.format("max rel error %.2e", maxRel));
+    }
+
+    @Test
+    void exactModeIsCorrectlyRounded() {
+        for (int n = 0; n <= 400; n++) {
+            for (int k = 0; k <= n; k++) {
+                assertEquals(Reference.binomial(n, k).doubleValue(), Combinatorics.nCr(n, k, true), "nCr(" + n + "," + k + ")");
+                assertEquals(Reference.permutations(n, k), Combinatorics.nPr(n, k, true), "nPr(" + n + "," + k + ")");
+            }
+        }
+    }
+
+    /** Exact mode is an engine setting, overridable per context, and never leaks between engines. */
+    @Test
+    void exactModeIsPerEngineAndContext() {
+        CalculatorEngine exact = new CalculatorEngine(), fast = new CalculatorEngine();
+        exact.setExactCombinatorics(true);
+        exact.setJitThreshold(1);
+        fast.setJitThreshold(1);
+        double want = Reference.binomial(400, 200).doubleValue(), approx = Combinatorics.nCr(400, 200, false);
+        assertNotEquals(want, approx);
+        for (int i = 0; i < 3; i++) {
+            assertEquals(want, exact.evaluate("nCr(400,200)"));
+            assertEquals(approx, fast.evaluate("nCr(400,200)"));
+        }
+        CompiledExpression ce = fast.compile("nCr(400,x)");
+        EvaluationContext ctx = fast.newContext();
+        ctx.setVariable("x", 200);
+        ctx.setExactCombinatorics(true);
+        assertEquals(want, ce.evaluate(ctx));
+        ctx.clearExactCombinatorics();
+        assertEquals(approx, ce.evaluate(ctx));
+    }
+}
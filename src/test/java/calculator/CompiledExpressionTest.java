@@ -0,0 +1,80 @@
+package calculator;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Arrays;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+class CompiledExpressionTest {
+    /**
+     * Steady-state compiled evaluation allocates nothing. Reading the allocation counter and JIT
+     * recompilation can each cost a few KB once, so the formula gets three rounds of 1M
+     * evaluations and passes if its cheapest round stays under 0.01 bytes per evaluation. A single
+     * allocation in the evaluation path costs at least 16 bytes per evaluation, in every round.
+     */
+    @ParameterizedTest
+    @ValueSource(strings = {"2+3*4", "a*sin(x)+b", "sqrt(x*x+y*y)/2", "((x+1)*(x-1))^2/(1+abs(y))", "ln(x)+log(y)-atan(x/y)",
+            "sin(x)*sin(x)+cos(x)*cos(x)", "nCr(20,k)*x"})
+    void steadyStateEvaluationAllocatesNothing(String formula) {
+        CompiledExpression ce = new CalculatorEngine().compile(formula);
+        double[] values = new double[ce.variables().size()];
+        Arrays.fill(values, 1.0);
+        int n = 1_000_000;
+        double s = 0;
+        for (int i = 0; i < 200_000; i++) s += ce.evaluate(values);
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round < 3; round++) {
+            long before = Reference.allocatedBytes();
+            for (int i = 0; i < n; i++) { if (values.length > 0) values[0] = i & 15; s += ce.evaluate(values); }
+            best = Math.min(best, Reference.allocatedBytes() - before);
+        }
+        assertFalse(Double.isNaN(s));
+        double perEval = (double) best / n;
+        assertTrue(perEval < 0.01, String.format("%.3f bytes/eval", perEval));
+    }
+
+    /**
+     * The method-handle tier matches the interpreter bit for bit, or fails with the same
+     * exception, for every operator and function in both angle modes, including signed zeros,
+     * NaN, infinities and out-of-domain arguments.
+     */
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    void jitMatchesInterpreter(boolean degrees) {
+        String[] formulas = {"x+y", "x-y", "x*y", "x/y", "x%y", "x^y", "-x", "sin(x)", "cos(x)", "tan(x)", "asin(x)", "acos(x)",
+                "atan(x)", "ln(x)", "log(x)", "sqrt(x)", "abs(x)", "fact(x)", "nCr(x,y)", "nPr(x,y)", "exp(x)", "mag(x)", "conj(x)",
+                "sin(x)*sin(x)+cos(x)*cos(x)", "2*3.14159*x-y/3", "(x*y+1)^2-(x*y+1)", "sin(30)+x"};
+        double[] xs = {0.0, -0.0, 0.5, -1, 1, 3, 20, 45, 90, 170.5, 171, 1e300, -1e-300, Double.NaN,
+                Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY};
+        CalculatorEngine engine = new CalculatorEngine();
+        engine.setJitThreshold(0);
+        engine.setDegrees(degrees);
+        for (String f: formulas) {
+            CompiledExpression interp = engine.compile(f), jit = engine.compile(f);
+            assertNotNull(jit.jit(degrees, false), f);
+            double[] values = new double[interp.variables().size()];
+            for (double x: xs) for (double y: xs) {
+                for (int s = 0; s < values.length; s++) values[s] = s == 0 ? x : y;
+                assertEquals(Reference.outcome(interp, values), Reference.outcome(jit, values), f + " at " + Arrays.toString(values));
+            }
+        }
+    }
+
+    @Test
+    void programsOverMaxJitCodeStayInterpreted() {
+        CalculatorEngine engine = new CalculatorEngine();
+        engine.setJitThreshold(1);
+        engine.setVariable("x", 1);
+        StringBuilder sum = new StringBuilder("x");
+        for (int i = 1; i < 20_000; i++) sum.append("+x");
+        CompiledExpression deep = engine.compile(sum.toString());
+        assertEquals(20_000, deep.evaluate());
+        assertEquals(20_000, deep.evaluate());
+        assertFalse(deep.isJitCompiled(false, false));
+        CompiledExpression small = engine.compile("x*2+1");
+        small.evaluate();
+        assertTrue(small.isJitCompiled(false, false));
+    }
+}
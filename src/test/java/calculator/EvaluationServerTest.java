@@ -0,0 +1,32 @@
+package calculator;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.net.URI;
+import java.net.http.*;
+import org.junit.jupiter.api.Test;
+
+class EvaluationServerTest {
+    /** A StackOverflowError while compiling is answered with 422, or reported in place in a batch. */
+    @Test
+    void stackOverflowGetsAResponse() throws Exception {
+        CalculatorEngine engine = new CalculatorEngine() {
+            @Override public CompiledExpression compile(String expr) {
+                if (expr.equals("overflow")) throw new StackOverflowError();
+                return super.compile(expr);
+            }
+        };
+        try (EvaluationServer server = new EvaluationServer(engine, 0)) {
+            server.start();
+            HttpClient client = HttpClient.newHttpClient();
+            URI uri = URI.create("http://127.0.0.1:" + server.port() + "/eval");
+            HttpResponse<String> get = client.send(HttpRequest.newBuilder(URI.create(uri + "?expr=overflow")).build(), HttpResponse.BodyHandlers.ofString());
+            assertEquals(422, get.statusCode());
+            assertEquals(EvaluationServer.TOO_DEEP, get.body());
+            HttpResponse<String> text = client.send(HttpRequest.newBuilder(uri).POST(HttpRequest.BodyPublishers.ofString("1+1\noverflow\n2*3")).build(), HttpResponse.BodyHandlers.ofString());
+            assertEquals("2\nERROR 2: " + EvaluationServer.TOO_DEEP + "\n6\n", text.body());
+            HttpResponse<String> json = client.send(HttpRequest.newBuilder(uri).POST(HttpRequest.BodyPublishers.ofString("{\"expressions\": [\"overflow\", \"1+1\"]}")).build(), HttpResponse.BodyHandlers.ofString());
+            assertEquals("{\"results\":[{\"error\":\"" + EvaluationServer.TOO_DEEP + "\"},{\"value\":2.0}]}", json.body());
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package calculator;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class HistoryListModelTest {
+    private static List<String> rows(HistoryListModel m) {
+        List<String> out = new ArrayList<>();
+        for (int i = 0; i < m.getSize(); i++) out.add(m.getElementAt(i));
+        return out;
+    }
+
+    /** A page read in the background replaces older rows but keeps the ones added while it ran. */
+    @Test
+    void mergeKeepsRowsAddedDuringTheRead() {
+        HistoryListModel m = new HistoryListModel();
+        m.add("stale");
+        long since = m.addCount();
+        m.add("c");
+        m.merge(List.of("b", "a"), since);
+        assertEquals(List.of("c", "b", "a"), rows(m));
+        m.addOlder(List.of("0", "-1"));
+        assertEquals(List.of("c", "b", "a", "0", "-1"), rows(m));
+    }
+}
@@ -0,0 +1,54 @@
+package calculator;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.*;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class HistoryManagerTest {
+    @TempDir Path dir;
+
+    @Test
+    void importsTextHistoryOnceAndAppendsToTheStore() throws Exception {
+        Path txt = dir.resolve("history.txt");
+        Files.write(txt, List.of("2026-01-01T00:00 | 1+1 = 2", "not a history line", "2026-01-01T00:01 | 2*3 = 6"));
+        String entry;
+        try (HistoryManager hm = new HistoryManager(txt.toString())) {
+            assertFalse(Files.exists(txt));
+            assertTrue(Files.exists(dir.resolve("history.txt.imported")));
+            entry = hm.append("x+1", "3");
+        }
+        try (HistoryManager hm = new HistoryManager(txt.toString())) {
+            assertEquals(List.of("2026-01-01T00:00 | 1+1 = 2", "2026-01-01T00:01 | 2*3 = 6", entry), hm.readAll());
+            assertEquals(entry, hm.tail(1).get(0).toString());
+            hm.clear();
+            assertEquals(0, hm.size());
+        }
+    }
+
+    @Test
+    void asyncAppendsAreVisibleToReads() {
+        try (HistoryManager hm = new HistoryManager(dir.resolve("history.txt").toString())) {
+            hm.enableAsync(new AsyncHistoryWriter.Options());
+            for (int i = 0; i < 1000; i++) hm.append("x+" + i, Integer.toString(i));
+            assertEquals(1000, hm.size());
+            assertEquals("x+999", hm.tail(1).get(0).expression);
+        }
+    }
+
+    /** {@code page(nextSeq(), n)} reads the entries appended before the call, even if they were still queued. */
+    @Test
+    void pageBeforeNextSeqExcludesLaterAppends() {
+        try (HistoryManager hm = new HistoryManager(dir.resolve("history.txt").toString())) {
+            hm.enableAsync(new AsyncHistoryWriter.Options().flushIntervalMillis(1000));
+            for (int i = 0; i < 10; i++) hm.append("x+" + i, Integer.toString(i));
+            long before = hm.nextSeq();
+            hm.append("late", "1");
+            List<HistoryStore.Entry> page = hm.page(before, 4);
+            assertEquals(List.of("x+9", "x+8", "x+7", "x+6"), page.stream().map(e -> e.expression).collect(java.util.stream.Collectors.toList()));
+            assertEquals(6, hm.page(page.get(3).seq, 100).size());
+        }
+    }
+}
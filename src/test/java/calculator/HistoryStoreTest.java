@@ -0,0 +1,55 @@
+package calculator;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.*;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class HistoryStoreTest {
+    @TempDir Path dir;
+
+    @Test
+    void compactKeepsRecentEntriesAcrossReopen() {
+        try (HistoryStore store = new HistoryStore(dir, 256)) {
+            for (int i = 0; i < 100; i++) store.append(1000 + i, "x+" + i, Integer.toString(i));
+            store.compact(1060);
+            assertEquals(40, store.size());
+            assertEquals("x+60", store.get(0).expression);
+            store.append(2000, "y", "1");
+        }
+        try (HistoryStore store = new HistoryStore(dir, 256)) {
+            assertEquals(41, store.size());
+            assertEquals("x+60", store.get(0).expression);
+            assertEquals("y", store.tail(1).get(0).expression);
+        }
+    }
+
+    /** Segments a compaction wrote but never committed to the manifest are discarded on open. */
+    @Test
+    void interruptedCompactionLeavesNoDuplicates() throws Exception {
+        try (HistoryStore store = new HistoryStore(dir, 256)) {
+            for (int i = 0; i < 50; i++) store.append(1000 + i, "x+" + i, Integer.toString(i));
+        }
+        // what a crash after writing the new segments but before the manifest commit leaves behind
+        List<Path> segments;
+        try (java.util.stream.Stream<Path> files = Files.list(dir)) {
+            segments = files.filter(p -> p.getFileName().toString().startsWith("segment-")).sorted().collect(java.util.stream.Collectors.toList());
+        }
+        String last = segments.get(segments.size() - 1).getFileName().toString();
+        int next = Integer.parseInt(last.substring(8, last.length() - 4)) + 1;
+        for (Path p: segments) {
+            String name = p.getFileName().toString();
+            int id = Integer.parseInt(name.substring(8, name.length() - 4));
+            Files.copy(p, dir.resolve(String.format("segment-%06d", id + next) + name.substring(name.length() - 4)));
+        }
+        try (HistoryStore store = new HistoryStore(dir, 256)) {
+            assertEquals(50, store.size());
+            assertEquals("x+49", store.tail(1).get(0).expression);
+        }
+        try (java.util.stream.Stream<Path> files = Files.list(dir)) {
+            assertEquals(segments.size(), files.filter(p -> p.getFileName().toString().startsWith("segment-")).count());
+        }
+    }
+}
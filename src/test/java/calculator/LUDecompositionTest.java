@@ -0,0 +1,72 @@
+package calculator;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Arrays;
+import org.junit.jupiter.api.Test;
+
+class LUDecompositionTest {
+    /** Determinant, inverse and solve against the cofactor reference on 20 random matrices for each n = 1..8. */
+    @Test
+    void matchesCofactorReference() {
+        double worstDet = 0, worstInv = 0, worstSolve = 0;
+        for (int n = 1; n <= 8; n++) {
+            for (long seed = 0; seed < 20; seed++) {
+                Matrix m = Reference.randomMatrix(n, seed);
+                double[][] d = m.toArray();
+                double ref = Reference.cofactorDet(d);
+                worstDet = Math.max(worstDet, Math.abs(m.determinant() - ref) / Math.max(1e-300, Math.abs(ref)));
+                double[][] refInv = Reference.cofactorInverse(d);
+                double[][] inv = m.inverse().toArray();
+                for (int i = 0; i < n; i++) for (int j = 0; j < n; j++)
+                    worstInv = Math.max(worstInv, Math.abs(inv[i][j] - refInv[i][j]) / Math.max(1.0, Math.abs(refInv[i][j])));
+                Matrix b = Reference.randomMatrix(n, seed + 100);
+                double[] residual = m.multiply(m.solve(b)).toRowMajor(), expect = b.toRowMajor();
+                for (int i = 0; i < residual.length; i++) worstSolve = Math.max(worstSolve, Math.abs(residual[i] - expect[i]));
+            }
+        }
+        assertTrue(worstDet < 1e-10, String.format("determinant max rel error %.2e", worstDet));
+        assertTrue(worstInv < 1e-10, String.format("inverse max error %.2e", worstInv));
+        assertTrue(worstSolve < 1e-12, String.format("|A*solve(A,B)-B| max %.2e", worstSolve));
+    }
+
+    @Test
+    void solveResidualAt200() {
+        Matrix a = Reference.randomMatrix(200, 5), b = Reference.randomMatrix(200, 6);
+        double[] residual = a.multiply(a.solve(b)).toRowMajor(), expect = b.toRowMajor();
+        double worst = 0;
+        for (int i = 0; i < residual.length; i++) worst = Math.max(worst, Math.abs(residual[i] - expect[i]));
+        assertTrue(worst < 1e-9, String.format("max %.2e", worst));
+    }
+
+    /** Singularity is decided from the pivots relative to the matrix norm, not from the determinant. */
+    @Test
+    void scaledIdentitiesAreRegular() {
+        double[][] regular = {{0.01, 7}, {0.1, 200}, {10, 400}, {1e-200, 3}, {1e200, 3}};
+        for (double[] c: regular) {
+            double v = c[0];
+            int n = (int) c[1];
+            Matrix inv = Reference.scaledIdentity(n, v).inverse();
+            assertEquals(1 / v, inv.get(0, 0), v + "*I" + n);
+            assertEquals(1 / v, inv.get(n - 1, n - 1), v + "*I" + n);
+        }
+        Matrix big = Reference.scaledIdentity(400, 10);
+        assertTrue(Double.isInfinite(big.determinant()));
+        assertFalse(big.lu().isSingular());
+    }
+
+    @Test
+    void singularMatricesAreRejected() {
+        double[][][] singular = {
+                {{1, 2, 3}, {4, 5, 6}, {7, 8, 9}},
+                {{1, 2}, {2, 4}},
+                {{0, 0}, {0, 0}},
+                {{1e-300, 2e-300}, {3e-300, 6e-300}},
+        };
+        for (double[][] m: singular) {
+            assertTrue(new Matrix(m).lu().isSingular(), Arrays.deepToString(m));
+            RuntimeException e = assertThrows(RuntimeException.class, () -> new Matrix(m).inverse(), Arrays.deepToString(m));
+            assertEquals("Singular", e.getMessage());
+        }
+    }
+}
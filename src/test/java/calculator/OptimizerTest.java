@@ -0,0 +1,46 @@
+package calculator;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Arrays;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+class OptimizerTest {
+    /** Optimized programs match unoptimized ones bit for bit, failures included. */
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    void optimizedResultsAreIdentical(boolean degrees) {
+        String[] formulas = {"2*3.14159*r", "sqrt(2)/2*x", "x*1+0", "1*x/1-0", "--x", "x^1", "x+-0", "-(0)+x",
+                "sin(x)*sin(x)+cos(x)*cos(x)", "(x+y)*(x+y)/(x+y)", "sin(30)+acos(0)*x", "fact(5)*x+nCr(10,3)",
+                "nCr(100,50)*x", "(x*y+1)^2-(x*y+1)", "x%3+x%3", "-x*-x", "1/0+x"};
+        double[] xs = {0.0, -0.0, 1.5, -2.25, 30, 1e300, Double.NaN, Double.POSITIVE_INFINITY};
+        CalculatorEngine on = new CalculatorEngine(), off = new CalculatorEngine();
+        off.setOptimizing(false);
+        on.setDegrees(degrees); off.setDegrees(degrees);
+        for (String f: formulas) {
+            CompiledExpression a = on.compile(f), b = off.compile(f);
+            double[] values = new double[a.variables().size()];
+            for (double x: xs) for (double y: xs) {
+                for (int s = 0; s < values.length; s++) values[s] = s == 0 ? x : y;
+                assertEquals(Reference.outcome(b, values), Reference.outcome(a, values), f + " at " + Arrays.toString(values));
+            }
+        }
+    }
+
+    @Test
+    void deepExpressionsEvaluateUnoptimized() {
+        CalculatorEngine engine = new CalculatorEngine();
+        engine.setVariable("x", 1);
+        StringBuilder sum = new StringBuilder("x");
+        for (int i = 1; i < 20_000; i++) sum.append("+x");
+        assertEquals(20_000, engine.evaluate(sum.toString()));
+        StringBuilder nested = new StringBuilder();
+        for (int i = 0; i < 5_000; i++) nested.append("abs(");
+        nested.append("-x");
+        for (int i = 0; i < 5_000; i++) nested.append(')');
+        assertEquals(1, engine.evaluate(nested.toString()));
+        assertTrue(engine.compile(sum.toString()).optimizations().isEmpty());
+    }
+}
@@ -0,0 +1,87 @@
+package calculator;
+
+import java.math.BigInteger;
+import java.util.Random;
+
+/** Slow but obviously correct reference implementations and fixtures shared by the tests. */
+final class Reference {
+    private Reference() {}
+
+    /** Entries uniform in [-0.5, 0.5) from a fixed seed. */
+    static Matrix randomMatrix(int n, long seed) {
+        Random r = new Random(seed);
+        double[] d = new double[n * n];
+        for (int i = 0; i < d.length; i++) d[i] = r.nextDouble() - 0.5;
+        return Matrix.fromRowMajor(n, n, d);
+    }
+
+    static Matrix scaledIdentity(int n, double v) {
+        double[] d = new double[n*n];
+        for (int i = 0; i < n; i++) d[i*n+i] = v;
+        return Matrix.fromRowMajor(n, n, d);
+    }
+
+    /** Cofactor expansion along the first row, as Matrix computed it before LU. */
+    static double cofactorDet(double[][] m) {
+        int n = m.length;
+        if (n==1) return m[0][0];
+        if (n==2) return m[0][0]*m[1][1] - m[0][1]*m[1][0];
+        double sum = 0;
+        for (int j = 0; j < n; j++) sum += Math.pow(-1, j) * m[0][j] * cofactorDet(minor(m, 0, j));
+        return sum;
+    }
+
+    static double[][] cofactorInverse(double[][] m) {
+        int n = m.length;
+        if (n == 1) return new double[][]{{1 / m[0][0]}};
+        double det = cofactorDet(m); double[][] inv = new double[n][n];
+        for (int i = 0; i < n; i++) for (int j = 0; j < n; j++) inv[j][i] = Math.pow(-1, i+j) * cofactorDet(minor(m, i, j)) / det;
+        return inv;
+    }
+
+    private static double[][] minor(double[][] m, int row, int col) {
+        int n = m.length; double[][] mm = new double[n-1][n-1];
+        for (int i = 0, r = 0; i < n; i++) {
+            if (i == row) continue;
+            for (int j = 0, c = 0; j < n; j++) if (j != col) mm[r][c++] = m[i][j];
+            r++;
+        }
+        return mm;
+    }
+
+    static double factorial(int n) {
+        BigInteger res = BigInteger.ONE;
+        for (int i = 2; i <= n; i++) res = res.multiply(BigInteger.valueOf(i));
+        return res.doubleValue();
+    }
+
+    static BigInteger binomial(int n, int k) {
+        k = Math.min(k, n - k);
+        BigInteger num = BigInteger.ONE, den = BigInteger.ONE;
+        for (int i = 1; i <= k; i++) {
+            num = num.multiply(BigInteger.valueOf(n - (k - i)));
+            den = den.multiply(BigInteger.valueOf(i));
+        }
+        return num.divide(den);
+    }
+
+    static double permutations(int n, int r) {
+        BigInteger res = BigInteger.ONE;
+        for (int i = 0; i < r; i++) res = res.multiply(BigInteger.valueOf(n - i));
+        return res.doubleValue();
+    }
+
+    static long allocatedBytes() {
+        com.sun.management.ThreadMXBean mx = (com.sun.management.ThreadMXBean) java.lang.management.ManagementFactory.getThreadMXBean();
+        return mx.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /** The result's bits, or the exception message, so failures compare too. */
+    static String outcome(CompiledExpression ce, double[] values) {
+        try {
+            return Long.toHexString(Double.doubleToRawLongBits(ce.evaluate(values)));
+        } catch (RuntimeException e) {
+            return e.getMessage();
+        }
+    }
+}
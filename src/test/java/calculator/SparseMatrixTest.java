@@ -0,0 +1,40 @@
+package calculator;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+/** The banded fork-join kernels give exactly what one pass over the rows in order gives. */
+class SparseMatrixTest {
+    private static SparseMatrix randomSparse(int n, int perRow, long seed) {
+        Random r = new Random(seed);
+        int[] ri = new int[n * perRow], ci = new int[ri.length];
+        double[] v = new double[ri.length];
+        for (int k = 0; k < ri.length; k++) { ri[k] = k / perRow; ci[k] = r.nextInt(n); v[k] = r.nextDouble() - 0.5; }
+        return SparseMatrix.fromTriplets(n, n, ri, ci, v);
+    }
+
+    @Test
+    void denseTimesSparseMatchesRowOrderedProduct() {
+        int n = 300;
+        Matrix a = Reference.randomMatrix(n, 1);
+        SparseMatrix b = randomSparse(n, 10, 2);
+        double[] aa = a.toRowMajor(), bb = b.toDense().toRowMajor(), want = new double[n * n];
+        for (int i = 0; i < n; i++)
+            for (int k = 0; k < n; k++)
+                for (int j = 0; j < n; j++) if (bb[k*n+j] != 0) want[i*n+j] += aa[i*n+k] * bb[k*n+j];
+        assertArrayEquals(want, a.multiply(b).toRowMajor());
+    }
+
+    @Test
+    void sparsePlusDenseMatchesElementwiseSum() {
+        int n = 600;
+        Matrix d = Reference.randomMatrix(n, 3);
+        SparseMatrix s = randomSparse(n, 200, 4);
+        double[] want = d.toRowMajor(), ss = s.toDense().toRowMajor();
+        for (int i = 0; i < want.length; i++) if (ss[i] != 0) want[i] += ss[i];
+        assertArrayEquals(want, s.add(d).toRowMajor());
+        assertArrayEquals(want, d.add(s).toRowMajor());
+    }
+}